@@ -0,0 +1,86 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.concurrent.TimeUnit;
+
+import com.chavaillaz.appender.log4j.DefaultLogConverter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link OpensearchAppender#append(LogEvent)} with several producer threads,
+ * sending the logs to a local stub server. The number of pending events is bounded
+ * so that producers faster than the transmissions are throttled instead of exhausting the memory.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class AppenderBenchmark {
+
+    @Param({"false", "true"})
+    public boolean streamingBulk;
+
+    @Param({"0", "4096"})
+    public int ringBufferSize;
+
+    private BulkStubServer server;
+    private OpensearchAppender appender;
+    private LogEvent event;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new BulkStubServer();
+        appender = OpensearchAppender.builder()
+                .setName("benchmark")
+                .setUrl(server.getUrl())
+                .setUser("user")
+                .setPassword("password")
+                .setConverter(streamingBulk ? DefaultStreamingLogConverter.class.getName() : DefaultLogConverter.class.getName())
+                .setStreamingBulk(streamingBulk)
+                .setRingBufferSize(ringBufferSize)
+                .setFlushThreshold(1_000)
+                .setMaxPendingEvents(100_000)
+                .build();
+        appender.start();
+        event = BenchmarkEvents.createEvent(false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        appender.stop();
+        server.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void append1Thread() {
+        appender.append(event);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void append8Threads() {
+        appender.append(event);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void append64Threads() {
+        appender.append(event);
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.apache.logging.log4j.Level.INFO;
+
+import java.time.Duration;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+
+/**
+ * Logging events and configurations shared by the benchmarks.
+ */
+public final class BenchmarkEvents {
+
+    private BenchmarkEvents() {
+    }
+
+    /**
+     * Creates a typical logging event, with a parameterized message and a few context entries.
+     *
+     * @param thrown {@code true} to include an exception in the event
+     * @return The logging event
+     */
+    public static LogEvent createEvent(boolean thrown) {
+        SortedArrayStringMap context = new SortedArrayStringMap();
+        context.putValue("requestId", "c0a80101-4f3a-4f0e-9f58-1b2c3d4e5f60");
+        context.putValue("user", "benchmark");
+        return Log4jLogEvent.newBuilder()
+                .setLoggerFqcn(BenchmarkEvents.class.getName())
+                .setLevel(INFO)
+                .setThreadName("benchmark")
+                .setTimeMillis(System.currentTimeMillis())
+                .setMessage(new ParameterizedMessage("Processed order {} in {} ms", 42, 17))
+                .setContextData(context)
+                .setThrown(thrown ? new IllegalStateException("Benchmark failure") : null)
+                .build();
+    }
+
+    /**
+     * Creates a configuration sending logs to the given URL.
+     *
+     * @param url       The URL of OpenSearch
+     * @param converter The class name of the converter to use
+     * @return The configuration
+     */
+    public static OpensearchConfiguration createConfiguration(String url, String converter) {
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setApplication("benchmark");
+        configuration.setHost("localhost");
+        configuration.setEnvironment("benchmark");
+        configuration.setConverter(converter);
+        configuration.setIndex("benchmark");
+        configuration.setIndexSuffix("-yyyy.MM.dd");
+        configuration.setUrl(url);
+        configuration.setUser("user");
+        configuration.setPassword("password");
+        configuration.setFlushThreshold(1_000);
+        configuration.setFlushInterval(Duration.ofSeconds(1));
+        return configuration;
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.chavaillaz.appender.log4j.DefaultLogConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the serialization and transmission of a bulk to a local stub server,
+ * with typed bulk requests compared to documents encoded directly in NDJSON.
+ * <p>
+ * Both paths are compressed with the given algorithm, but differently: typed bulk requests by the HTTP transport
+ * of the client (with its default level), and encoded bulks by the delivery itself (with the level 1).
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class BulkBenchmark {
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    @Param({"NONE", "GZIP"})
+    public Compression compression;
+
+    private BulkStubServer server;
+    private OpensearchLogDelivery typedDelivery;
+    private OpensearchLogDelivery encodedDelivery;
+    private OpensearchBulkEncoder encoder;
+    private BulkBuffer buffer;
+    private List<Map<String, Object>> documents;
+
+    @Setup
+    public void setup() throws Exception {
+        server = new BulkStubServer();
+        typedDelivery = new OpensearchLogDelivery(createConfiguration(false));
+        encodedDelivery = new OpensearchLogDelivery(createConfiguration(true));
+        encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        buffer = new BulkBuffer(64 * 1024);
+        documents = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            documents.add(typedDelivery.getConfiguration().getConverter().convert(BenchmarkEvents.createEvent(i % 100 == 0)));
+        }
+    }
+
+    private OpensearchConfiguration createConfiguration(boolean streamingBulk) {
+        OpensearchConfiguration configuration = BenchmarkEvents.createConfiguration(server.getUrl(), DefaultLogConverter.class.getName());
+        configuration.setStreamingBulk(streamingBulk);
+        configuration.setCompression(compression);
+        configuration.setCompressionLevel(1);
+        return configuration;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        typedDelivery.close();
+        encodedDelivery.close();
+        server.close();
+    }
+
+    @Benchmark
+    public boolean sendTypedBulk() {
+        return typedDelivery.sendTypedBulk(documents);
+    }
+
+    @Benchmark
+    public void sendEncodedBulk() throws Exception {
+        for (Map<String, Object> document : documents) {
+            encoder.writeIndexOperation(buffer, "benchmark", document);
+        }
+        encodedDelivery.sendEncodedBulk(buffer);
+        buffer.reset();
+    }
+
+}
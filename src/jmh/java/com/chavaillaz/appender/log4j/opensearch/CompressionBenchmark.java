@@ -0,0 +1,81 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.chavaillaz.appender.log4j.DefaultLogConverter;
+import com.chavaillaz.appender.log4j.LogConverter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPU cost of the compression of bulks compared to the bytes saved, for several algorithms, levels and batch sizes.
+ * The size of the bulk before and after compression is reported as secondary results.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class CompressionBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int batchSize;
+
+    @Param({"GZIP", "DEFLATE"})
+    public Compression compression;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private BulkCompressor compressor;
+    private BulkBuffer bulk;
+    private BulkBuffer compressed;
+
+    @Setup
+    public void setup() throws Exception {
+        LogConverter converter = BenchmarkEvents.createConfiguration(null, DefaultLogConverter.class.getName()).getConverter();
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        compressor = new BulkCompressor(compression, level);
+        bulk = new BulkBuffer(64 * 1024);
+        compressed = new BulkBuffer(64 * 1024);
+        for (int i = 0; i < batchSize; i++) {
+            Map<String, Object> document = converter.convert(BenchmarkEvents.createEvent(i % 100 == 0));
+            encoder.writeIndexOperation(bulk, "benchmark", document);
+        }
+    }
+
+    @Benchmark
+    public void compress(Sizes sizes) throws Exception {
+        compressor.compress(bulk, compressed);
+        sizes.uncompressedBytes = bulk.size();
+        sizes.compressedBytes = compressed.size();
+        compressed.reset();
+    }
+
+    /**
+     * Sizes of the last bulk compressed, reported by JMH along with the time spent.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+
+        public long uncompressedBytes;
+        public long compressedBytes;
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+
+import java.util.concurrent.TimeUnit;
+
+import com.chavaillaz.appender.log4j.DefaultLogConverter;
+import com.chavaillaz.appender.log4j.LogConverter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of the conversion of a logging event into a document, compared to its direct encoding in NDJSON.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ConverterBenchmark {
+
+    @Param({"false", "true"})
+    public boolean thrown;
+
+    private LogConverter converter;
+    private StreamingLogConverter streamingConverter;
+    private OpensearchBulkEncoder encoder;
+    private BulkBuffer buffer;
+    private LogEvent event;
+
+    @Setup
+    public void setup() {
+        converter = BenchmarkEvents.createConfiguration(null, DefaultLogConverter.class.getName()).getConverter();
+        streamingConverter = (StreamingLogConverter) BenchmarkEvents.createConfiguration(null, DefaultStreamingLogConverter.class.getName()).getConverter();
+        encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        buffer = new BulkBuffer(64 * 1024);
+        event = BenchmarkEvents.createEvent(thrown);
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) {
+        blackhole.consume(converter.convert(event));
+    }
+
+    @Benchmark
+    public void convertAndEncode(Blackhole blackhole) throws Exception {
+        encoder.writeIndexOperation(buffer, "benchmark", converter.convert(event));
+        blackhole.consume(buffer.size());
+        buffer.reset();
+    }
+
+    @Benchmark
+    public void encodeStreaming(Blackhole blackhole) throws Exception {
+        encoder.writeIndexOperation(buffer, "benchmark", event, streamingConverter);
+        blackhole.consume(buffer.size());
+        buffer.reset();
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+import com.chavaillaz.appender.log4j.DefaultLogConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the generation of the index name for each document, from a date, a formatted date or a timestamp.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class IndexNameBenchmark {
+
+    private OpensearchConfiguration configuration;
+    private String dateTime;
+
+    @Setup
+    public void setup() {
+        configuration = BenchmarkEvents.createConfiguration(null, DefaultLogConverter.class.getName());
+        dateTime = OffsetDateTime.now().toString();
+    }
+
+    @Benchmark
+    public String generateFromDateTime() {
+        return configuration.generateIndexName(OffsetDateTime.now());
+    }
+
+    @Benchmark
+    public String generateFromString() {
+        return configuration.generateIndexName(dateTime);
+    }
+
+    @Benchmark
+    public String generateFromTimestamp() {
+        return configuration.generateIndexName(System.currentTimeMillis());
+    }
+
+}
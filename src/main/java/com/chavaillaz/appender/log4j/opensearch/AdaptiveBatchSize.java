@@ -0,0 +1,64 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.time.Duration;
+
+import lombok.Getter;
+
+/**
+ * Number of documents per bulk adapted to the responsiveness of the cluster, following an additive increase and
+ * multiplicative decrease approach: the size grows slowly while bulks are indexed faster than the target latency,
+ * and shrinks quickly when they are slower or rejected because the cluster is overloaded.
+ */
+public class AdaptiveBatchSize {
+
+    private static final double SLOW_DECREASE_FACTOR = 0.75;
+    private static final double REJECTED_DECREASE_FACTOR = 0.5;
+    private static final double INCREASE_RATIO = 0.1;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long targetLatency;
+    @Getter
+    private volatile int size;
+
+    /**
+     * Creates a new adaptive batch size.
+     *
+     * @param initialSize   The initial number of documents per bulk
+     * @param minSize       The minimum number of documents per bulk
+     * @param maxSize       The maximum number of documents per bulk
+     * @param targetLatency The time the cluster should take to index a bulk
+     */
+    public AdaptiveBatchSize(int initialSize, int minSize, int maxSize, Duration targetLatency) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.targetLatency = targetLatency.toMillis();
+        this.size = Math.clamp(initialSize, this.minSize, this.maxSize);
+    }
+
+    /**
+     * Adapts the size according to the response of a bulk.
+     *
+     * @param took      The time (in milliseconds) the cluster took to index the bulk
+     * @param documents The number of documents of the bulk
+     * @param rejected  {@code true} if documents have been rejected because the cluster is overloaded
+     */
+    public synchronized void onResponse(long took, int documents, boolean rejected) {
+        if (rejected) {
+            onRejected();
+        } else if (took > targetLatency) {
+            size = Math.max(minSize, (int) (size * SLOW_DECREASE_FACTOR));
+        } else if (documents >= size) {
+            // Only grow when bulks are full, otherwise the size is not what limits the throughput
+            size = Math.min(maxSize, size + Math.max(1, (int) (size * INCREASE_RATIO)));
+        }
+    }
+
+    /**
+     * Shrinks the size after a bulk has been rejected because the cluster is overloaded.
+     */
+    public synchronized void onRejected() {
+        size = Math.max(minSize, (int) (size * REJECTED_DECREASE_FACTOR));
+    }
+
+}
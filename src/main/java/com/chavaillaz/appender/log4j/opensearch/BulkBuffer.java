@@ -0,0 +1,229 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Reusable byte buffer holding a bulk request body in NDJSON format.
+ * It keeps track of the offset of each document (action line and source) written in it,
+ * so that they can be addressed individually without parsing the content again.
+ */
+public class BulkBuffer extends ByteArrayOutputStream {
+
+    private int[] offsets = new int[64];
+    private int documents;
+    private int first;
+
+    /**
+     * Generator writing into this buffer, kept across resets to avoid allocating a new one for each bulk.
+     */
+    @Getter
+    @Setter
+    private JsonGenerator generator;
+
+    /**
+     * Creates a new bulk buffer.
+     *
+     * @param capacity The initial capacity in bytes
+     */
+    public BulkBuffer(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * Marks the beginning of a new document at the current position of the buffer.
+     * Note that the generator (if any) must have been flushed before calling this method.
+     */
+    public synchronized void startDocument() {
+        startDocument(count);
+    }
+
+    private void startDocument(int offset) {
+        if (documents == offsets.length) {
+            offsets = Arrays.copyOf(offsets, documents * 2);
+        }
+        offsets[documents++] = offset;
+    }
+
+    /**
+     * Removes the last document started from this buffer, for instance when it could only be partially written.
+     * The generator is also discarded as its state is not consistent anymore.
+     */
+    public synchronized void discardLastDocument() {
+        if (documents > first) {
+            count = offsets[--documents];
+        }
+        generator = null;
+    }
+
+    /**
+     * Removes the oldest document of this buffer, without moving the content of the other ones.
+     *
+     * @return The size in bytes of the document removed or {@code 0} if the buffer is empty
+     */
+    public synchronized int dropFirstDocument() {
+        if (documents == first) {
+            return 0;
+        }
+        int end = getDocumentEnd(0);
+        int length = end - offsets[first++];
+        if (first == documents) {
+            reset();
+        }
+        return length;
+    }
+
+    /**
+     * Copies the content of this buffer at the end of the given buffer, as a single new document.
+     *
+     * @param target The buffer in which to copy the content
+     */
+    public synchronized void copyTo(BulkBuffer target) {
+        target.startDocument();
+        target.write(buf, 0, count);
+    }
+
+    /**
+     * Copies the given document of this buffer at the end of the given buffer, as a new document.
+     *
+     * @param index  The index of the document, ignoring the documents removed
+     * @param target The buffer in which to copy the document
+     */
+    public synchronized void copyDocumentTo(int index, BulkBuffer target) {
+        int start = offsets[first + index];
+        target.startDocument();
+        target.write(buf, start, getDocumentEnd(index) - start);
+    }
+
+    /**
+     * Gets the source of the given document of this buffer, without its action line.
+     *
+     * @param index The index of the document, ignoring the documents removed
+     * @return The source of the document in JSON format
+     */
+    public synchronized String getDocumentSource(int index) {
+        int start = offsets[first + index];
+        int end = getDocumentEnd(index);
+        while (start < end && buf[start++] != '\n') {
+            // skip the action line
+        }
+        if (end > start && buf[end - 1] == '\n') {
+            end--;
+        }
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private int getDocumentEnd(int index) {
+        return first + index + 1 < documents ? offsets[first + index + 1] : count;
+    }
+
+    /**
+     * Writes the content of this buffer into the given byte buffer, ignoring the documents removed.
+     *
+     * @param target   The byte buffer in which to write
+     * @param position The position in the byte buffer at which to write
+     */
+    public synchronized void writeContentTo(ByteBuffer target, int position) {
+        int start = getContentStart();
+        target.put(position, buf, start, count - start);
+    }
+
+    /**
+     * Writes the content of this buffer into the given stream, ignoring the documents removed.
+     *
+     * @param output The stream in which to write
+     * @throws IOException If the content cannot be written
+     */
+    public synchronized void writeContentTo(OutputStream output) throws IOException {
+        int start = getContentStart();
+        output.write(buf, start, count - start);
+    }
+
+    /**
+     * Appends content in NDJSON format read from the given byte buffer, and indexes the documents it contains
+     * (each document being composed of an action line followed by a source line).
+     *
+     * @param source   The byte buffer from which to read
+     * @param position The position in the byte buffer at which to read
+     * @param length   The number of bytes to read
+     */
+    public synchronized void readContentFrom(ByteBuffer source, int position, int length) {
+        if (count + length > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+        }
+        source.get(position, buf, count, length);
+        int end = count + length;
+        boolean lineStart = true;
+        int lines = 0;
+        for (int i = count; i < end; i++) {
+            if (lineStart && lines % 2 == 0) {
+                startDocument(i);
+            }
+            lineStart = buf[i] == '\n';
+            if (lineStart) {
+                lines++;
+            }
+        }
+        count = end;
+    }
+
+    /**
+     * Gets the number of documents written in this buffer.
+     *
+     * @return The number of documents
+     */
+    public synchronized int getDocuments() {
+        return documents - first;
+    }
+
+    /**
+     * Gets the size of the content of this buffer, ignoring the documents removed.
+     *
+     * @return The size in bytes
+     */
+    public synchronized int getContentLength() {
+        return count - getContentStart();
+    }
+
+    private int getContentStart() {
+        return first > 0 && first < documents ? offsets[first] : 0;
+    }
+
+    /**
+     * Gets the capacity of the underlying array.
+     *
+     * @return The capacity in bytes
+     */
+    public synchronized int capacity() {
+        return buf.length;
+    }
+
+    /**
+     * Gets a stream reading the content of this buffer without copying it.
+     * Note that the buffer must not be modified or reset while the stream is being consumed.
+     *
+     * @return The stream on the content of the buffer
+     */
+    public synchronized InputStream toInputStream() {
+        int start = getContentStart();
+        return new ByteArrayInputStream(buf, start, count - start);
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        documents = 0;
+        first = 0;
+    }
+
+}
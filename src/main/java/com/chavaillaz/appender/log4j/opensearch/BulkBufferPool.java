@@ -0,0 +1,50 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Pool of {@link BulkBuffer} reused from one bulk to the next one.
+ * Buffers that grew too much (for instance after an exceptionally big bulk) are not kept,
+ * in order to avoid retaining their memory indefinitely.
+ */
+public class BulkBufferPool {
+
+    private final Queue<BulkBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+
+    /**
+     * Creates a new pool of bulk buffers.
+     *
+     * @param initialCapacity     The initial capacity in bytes of the buffers created
+     * @param maxRetainedCapacity The maximum capacity in bytes of the buffers to keep when released
+     */
+    public BulkBufferPool(int initialCapacity, int maxRetainedCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * Gets an empty buffer from the pool or creates a new one if none is available.
+     *
+     * @return The empty buffer
+     */
+    public BulkBuffer acquire() {
+        BulkBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : new BulkBuffer(initialCapacity);
+    }
+
+    /**
+     * Gives back a buffer to the pool once its content has been sent.
+     *
+     * @param buffer The buffer to release
+     */
+    public void release(BulkBuffer buffer) {
+        if (buffer != null && buffer.capacity() <= maxRetainedCapacity) {
+            buffer.reset();
+            buffers.offer(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import lombok.Getter;
+
+/**
+ * Compressor of bulk buffers, writing the compressed content directly into another buffer
+ * without creating an intermediate copy of the uncompressed content.
+ * The deflaters are kept per thread, in order to avoid allocating their native memory for each bulk.
+ */
+public class BulkCompressor {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int DEFLATER_BUFFER_SIZE = 8 * 1024;
+
+    @Getter
+    private final Compression compression;
+    private final ThreadLocal<Deflater> deflaters;
+
+    /**
+     * Creates a new bulk compressor.
+     *
+     * @param compression The compression algorithm to use
+     * @param level       The compression level, from {@code 1} (fastest) to {@code 9} (smallest)
+     *                    or {@code -1} for the default level of the algorithm
+     */
+    public BulkCompressor(Compression compression, int level) {
+        this.compression = compression;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, compression == Compression.GZIP));
+    }
+
+    /**
+     * Compresses the content of the given bulk at the end of the target buffer.
+     *
+     * @param source The bulk to compress
+     * @param target The buffer in which to write the compressed content
+     * @throws IOException If the content cannot be compressed
+     */
+    public void compress(BulkBuffer source, BulkBuffer target) throws IOException {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        DeflaterOutputStream output = new DeflaterOutputStream(target, deflater, DEFLATER_BUFFER_SIZE);
+        if (compression == Compression.GZIP) {
+            CRC32 checksum = new CRC32();
+            target.write(GZIP_HEADER);
+            source.writeContentTo(new CheckedOutputStream(output, checksum));
+            output.finish();
+            writeIntLittleEndian(target, (int) checksum.getValue());
+            writeIntLittleEndian(target, source.getContentLength());
+        } else {
+            source.writeContentTo(output);
+            output.finish();
+        }
+    }
+
+    private static void writeIntLittleEndian(BulkBuffer target, int value) {
+        target.write(value & 0xff);
+        target.write((value >> 8) & 0xff);
+        target.write((value >> 16) & 0xff);
+        target.write((value >> 24) & 0xff);
+    }
+
+}
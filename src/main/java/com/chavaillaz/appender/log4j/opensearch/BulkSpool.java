@@ -0,0 +1,238 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.stream.Stream;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Disk spool storing encoded bulks when they cannot be sent, in order to replay them later.
+ * <p>
+ * Bulks are appended as records into segments of fixed size, which are memory-mapped files named with an increasing
+ * sequence number. A record is composed of its length and number of documents, followed by the bulk content.
+ * The length of a record is written last, so that a record partially written (for instance during a crash) is ignored.
+ * The position of the next record to replay is persisted in a checkpoint file each time a record is consumed,
+ * and segments are deleted once all their records have been consumed.
+ */
+@Log4j2
+public class BulkSpool implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String CHECKPOINT_FILE = "spool.checkpoint";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int CHECKPOINT_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final long maxSize;
+    private final int segmentSize;
+    private final Deque<Long> segments = new ArrayDeque<>();
+    private final MappedByteBuffer checkpoint;
+    private MappedByteBuffer writeBuffer;
+    private long writeSegment;
+    private int writePosition;
+    private MappedByteBuffer readBuffer;
+    private long readSegment;
+    private int readPosition;
+    private int peekedLength;
+
+    /**
+     * Creates a new spool or opens the existing one in the given directory.
+     *
+     * @param directory   The directory in which to store the segments
+     * @param maxSize     The maximum size in bytes of all the segments
+     * @param segmentSize The size in bytes of each segment
+     * @throws IOException If the spool files cannot be opened
+     */
+    public BulkSpool(Path directory, long maxSize, int segmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+        this.checkpoint = map(directory.resolve(CHECKPOINT_FILE), CHECKPOINT_SIZE);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(segments::addLast);
+        }
+        recover();
+    }
+
+    private void recover() throws IOException {
+        long checkpointSegment = checkpoint.getLong(0);
+        int checkpointPosition = checkpoint.getInt(Long.BYTES);
+        while (!segments.isEmpty() && segments.peekFirst() < checkpointSegment) {
+            delete(segments.pollFirst());
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(Math.max(checkpointSegment, 0));
+            checkpointPosition = 0;
+        }
+
+        readSegment = segments.peekFirst();
+        readPosition = readSegment == checkpointSegment ? checkpointPosition : 0;
+        readBuffer = map(segmentPath(readSegment), segmentSize);
+
+        writeSegment = segments.peekLast();
+        writeBuffer = writeSegment == readSegment ? readBuffer : map(segmentPath(writeSegment), segmentSize);
+        writePosition = writeSegment == readSegment ? readPosition : 0;
+        while (recordLength(writeBuffer, writePosition) > 0) {
+            writePosition += HEADER_SIZE + recordLength(writeBuffer, writePosition);
+        }
+        saveCheckpoint();
+    }
+
+    /**
+     * Appends the content of the given bulk at the end of the spool.
+     *
+     * @param bulk The bulk to store
+     * @return {@code true} if the bulk has been stored, {@code false} if there is not enough space left
+     */
+    public synchronized boolean append(BulkBuffer bulk) {
+        int length = bulk.getContentLength();
+        if (length == 0 || HEADER_SIZE + length > segmentSize) {
+            return false;
+        }
+
+        try {
+            if (writePosition + HEADER_SIZE + length > segmentSize) {
+                if ((segments.size() + 1L) * segmentSize > maxSize) {
+                    return false;
+                }
+                writeBuffer.force();
+                writeSegment++;
+                writePosition = 0;
+                writeBuffer = map(segmentPath(writeSegment), segmentSize);
+                segments.addLast(writeSegment);
+            }
+
+            bulk.writeContentTo(writeBuffer, writePosition + HEADER_SIZE);
+            writeBuffer.putInt(writePosition + Integer.BYTES, bulk.getDocuments());
+            writeBuffer.putInt(writePosition, length);
+            writePosition += HEADER_SIZE + length;
+            return true;
+        } catch (IOException e) {
+            log.warn("Unable to write bulk in spool: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the next bulk to replay without consuming it, so that it can be read again if it cannot be sent.
+     *
+     * @param target The buffer in which to copy the bulk, which is reset first
+     * @return {@code true} if a bulk has been read, {@code false} if the spool is empty
+     */
+    public synchronized boolean peek(BulkBuffer target) {
+        target.reset();
+        int length = nextRecordLength();
+        if (length == 0) {
+            return false;
+        }
+        target.readContentFrom(readBuffer, readPosition + HEADER_SIZE, length);
+        peekedLength = length;
+        return true;
+    }
+
+    /**
+     * Consumes the bulk previously read with {@link #peek(BulkBuffer)} and persists the new position to replay from.
+     */
+    public synchronized void commit() {
+        if (peekedLength > 0) {
+            readPosition += HEADER_SIZE + peekedLength;
+            peekedLength = 0;
+            saveCheckpoint();
+        }
+    }
+
+    /**
+     * Gets the length of the next record to read, moving to the next segment when the current one is fully consumed.
+     *
+     * @return The length of the next record or {@code 0} if there are none
+     */
+    private int nextRecordLength() {
+        int length = recordLength(readBuffer, readPosition);
+        while (length == 0 && readSegment != writeSegment) {
+            delete(segments.pollFirst());
+            readSegment = segments.peekFirst();
+            readPosition = 0;
+            try {
+                readBuffer = readSegment == writeSegment ? writeBuffer : map(segmentPath(readSegment), segmentSize);
+            } catch (IOException e) {
+                log.warn("Unable to read spool segment {}: {}", readSegment, e.getMessage(), e);
+                return 0;
+            }
+            saveCheckpoint();
+            length = recordLength(readBuffer, readPosition);
+        }
+        return length;
+    }
+
+    private int recordLength(MappedByteBuffer buffer, int position) {
+        if (position + HEADER_SIZE > segmentSize) {
+            return 0;
+        }
+        int length = buffer.getInt(position);
+        return length > 0 && position + HEADER_SIZE + length <= segmentSize ? length : 0;
+    }
+
+    /**
+     * Indicates if there are bulks to replay.
+     *
+     * @return {@code true} if the spool is empty, {@code false} otherwise
+     */
+    public synchronized boolean isEmpty() {
+        return readSegment == writeSegment && readPosition >= writePosition;
+    }
+
+    /**
+     * Gets the size used on disk by the segments of the spool.
+     *
+     * @return The size in bytes
+     */
+    public synchronized long getSize() {
+        return (long) segments.size() * segmentSize;
+    }
+
+    private void saveCheckpoint() {
+        checkpoint.putLong(0, readSegment);
+        checkpoint.putInt(Long.BYTES, readPosition);
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private void delete(long segment) {
+        try {
+            Files.deleteIfExists(segmentPath(segment));
+        } catch (IOException e) {
+            log.warn("Unable to delete spool segment {}: {}", segment, e.getMessage(), e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+            return channel.map(MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        writeBuffer.force();
+        checkpoint.force();
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.io.IOException;
+
+import lombok.Getter;
+
+/**
+ * Exception thrown when a bulk request is refused as a whole with an HTTP error status.
+ */
+@Getter
+public class BulkStatusException extends IOException {
+
+    private final int status;
+
+    /**
+     * Creates a new exception for the given response status.
+     *
+     * @param status The HTTP status of the response
+     * @param reason The reason phrase of the response
+     */
+    public BulkStatusException(int status, String reason) {
+        super("HTTP " + status + " " + reason);
+        this.status = status;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Compression algorithms of the bulk requests sent to OpenSearch.
+ */
+@Getter
+@AllArgsConstructor
+public enum Compression {
+
+    /**
+     * Sends the bulk requests without compression.
+     */
+    NONE(null),
+
+    /**
+     * Compresses the bulk requests with GZIP, supported by all OpenSearch versions.
+     */
+    GZIP("gzip"),
+
+    /**
+     * Compresses the bulk requests with DEFLATE (zlib format), slightly cheaper than GZIP
+     * as it avoids computing the CRC-32 checksum of the content.
+     */
+    DEFLATE("deflate");
+
+    /**
+     * Value of the {@code Content-Encoding} header of the compressed requests.
+     */
+    private final String encoding;
+
+}
@@ -0,0 +1,122 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.apache.logging.log4j.util.IndexedReadOnlyStringMap;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.StringMap;
+
+/**
+ * Immutable snapshot of the context data (MDC) of an event, keeping the fields to add to the documents
+ * already filtered and serialized in JSON, so that it can be shared by the following events as long as
+ * their context data is unchanged, which is the case of most consecutive events of a same thread.
+ * <p>
+ * An event has the same context data if it is the same frozen map (as given by the default copy-on-write
+ * context map of Log4j), or a map with the same entries in the same order (when the context data is copied
+ * into reusable events), compared by position without any allocation.
+ */
+public final class ContextSnapshot {
+
+    private static final String[] NO_KEYS = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final ReadOnlyStringMap source;
+    private final Predicate<String> filter;
+    private final String[] keys;
+    private final Object[] values;
+    private final Map<String, Object> fields;
+    private final SerializableString json;
+
+    private ContextSnapshot(ReadOnlyStringMap source, Predicate<String> filter) {
+        int size = source.size();
+        this.source = source;
+        this.filter = filter;
+        this.keys = size == 0 ? NO_KEYS : new String[size];
+        this.values = size == 0 ? NO_VALUES : new Object[size];
+        Map<String, Object> included = new LinkedHashMap<>();
+        StringBuilder text = new StringBuilder();
+        int[] position = {0};
+        source.forEach((key, value) -> {
+            keys[position[0]] = key;
+            values[position[0]++] = value;
+            if (filter.test(key)) {
+                String string = String.valueOf(value);
+                included.put(key, string);
+                appendField(text, key, string);
+            }
+        });
+        this.fields = Collections.unmodifiableMap(included);
+        this.json = new SerializedString(text.toString());
+    }
+
+    /**
+     * Creates a snapshot of the given context data.
+     *
+     * @param contextData The context data of an event
+     * @param filter      The filter of the keys to add to the documents
+     * @return The snapshot created
+     */
+    public static ContextSnapshot of(ReadOnlyStringMap contextData, Predicate<String> filter) {
+        return new ContextSnapshot(contextData, filter);
+    }
+
+    private static void appendField(StringBuilder json, String name, String value) {
+        json.append(",\"");
+        JsonStringEncoder.getInstance().quoteAsString(name, json);
+        json.append("\":\"");
+        JsonStringEncoder.getInstance().quoteAsString(value, json);
+        json.append('"');
+    }
+
+    /**
+     * Indicates if this snapshot can be used for the given context data and filter.
+     *
+     * @param contextData The context data of an event
+     * @param filter      The filter of the keys to add to the documents
+     * @return {@code true} if the context data and filter are the same as the ones of this snapshot
+     */
+    public boolean matches(ReadOnlyStringMap contextData, Predicate<String> filter) {
+        if (this.filter != filter) {
+            return false;
+        }
+        if (contextData == source && contextData instanceof StringMap map && map.isFrozen()) {
+            return true;
+        }
+        if (!(contextData instanceof IndexedReadOnlyStringMap indexed) || indexed.size() != keys.length) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (!keys[i].equals(indexed.getKeyAt(i)) || !Objects.equals(values[i], indexed.getValueAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the fields to add to the documents, with their values converted into text.
+     *
+     * @return The unmodifiable fields in the order of the context data
+     */
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    /**
+     * Gets the fields to add to the documents serialized in JSON, each one preceded by a separator,
+     * in order to be copied as is after the other fields of a document.
+     *
+     * @return The serialized fields
+     */
+    public SerializableString getJson() {
+        return json;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+
+/**
+ * Handler receiving the documents permanently refused by OpenSearch (for instance due to mapping errors),
+ * or still refused once all retries have been exhausted when no spool is configured.
+ */
+public interface DeadLetterHandler {
+
+    /**
+     * Configures the handler before its usage.
+     *
+     * @param configuration The configuration of the appender
+     */
+    default void configure(OpensearchConfiguration configuration) {
+        // nothing to configure by default
+    }
+
+    /**
+     * Handles a document refused by OpenSearch.
+     * Note that it is called from the thread sending the bulks and should therefore not block.
+     *
+     * @param item     The item of the bulk response describing the error
+     *                 or {@code null} if the document has been refused because retries have been exhausted
+     * @param document The source of the refused document in JSON format
+     */
+    void handle(BulkResponseItem item, String document);
+
+}
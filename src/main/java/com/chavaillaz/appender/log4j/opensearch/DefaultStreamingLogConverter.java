@@ -0,0 +1,339 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.chavaillaz.appender.LogConfiguration;
+import com.chavaillaz.appender.log4j.opensearch.StackTraceRenderer.RenderedStackTrace;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.util.Constants;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+/**
+ * Converter producing the same documents as the default converter,
+ * but also able to write them directly with a streaming generator.
+ * <p>
+ * When writing with a generator, the formatted message and the date are rendered in buffers
+ * reused for each event of a thread (unless thread locals are disabled in Log4j),
+ * and the fields having the same value for all the events (host, environment and application) are serialized
+ * only once and copied as is in each document.
+ * <p>
+ * The context data (MDC) is filtered with the keys configured in the {@link OpensearchConfiguration} and kept in a
+ * {@link ContextSnapshot} per thread, already serialized, which is shared by the following events of the thread
+ * as long as their context data is unchanged. The keys having the name of another field of the documents
+ * are ignored, so that they neither replace nor duplicate it.
+ * <p>
+ * The stack traces are rendered by a {@link StackTraceRenderer} created from the {@link OpensearchConfiguration}
+ * (with its cache, depth limit and hash), so that repeated exceptions are only rendered once.
+ */
+public class DefaultStreamingLogConverter implements StreamingLogConverter {
+
+    private static final SerializableString DATETIME = new SerializedString("datetime");
+    private static final SerializableString HOST = new SerializedString("host");
+    private static final SerializableString ENVIRONMENT = new SerializedString("environment");
+    private static final SerializableString APPLICATION = new SerializedString("application");
+    private static final SerializableString LOGGER = new SerializedString("logger");
+    private static final SerializableString LEVEL = new SerializedString("level");
+    private static final SerializableString MESSAGE = new SerializedString("logmessage");
+    private static final SerializableString THREAD = new SerializedString("thread");
+    private static final SerializableString STACKTRACE = new SerializedString("stacktrace");
+    private static final SerializableString STACKHASH = new SerializedString("stackhash");
+    private static final Set<String> RESERVED_KEYS = Set.of(DATETIME.getValue(), HOST.getValue(), ENVIRONMENT.getValue(),
+            APPLICATION.getValue(), LOGGER.getValue(), LEVEL.getValue(), MESSAGE.getValue(), THREAD.getValue(),
+            STACKTRACE.getValue(), STACKHASH.getValue());
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+    private LogConfiguration configuration;
+    private volatile StackTraceRenderer stackTraceRenderer;
+    private volatile SerializableString staticFields;
+    private volatile Predicate<String> contextFilter;
+    private volatile ContextSnapshot lastContext;
+
+    @Override
+    public void configure(LogConfiguration configuration) {
+        this.configuration = configuration;
+        this.stackTraceRenderer = null;
+        this.staticFields = null;
+        this.contextFilter = null;
+    }
+
+    @Override
+    public Map<String, Object> convert(LogEvent event) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("datetime", DATE_FORMATTER.format(Instant.ofEpochMilli(event.getTimeMillis())));
+        data.put("host", configuration.getHost());
+        data.put("environment", configuration.getEnvironment());
+        data.put("application", configuration.getApplication());
+        data.put("logger", event.getLoggerFqcn());
+        data.put("level", event.getLevel().toString());
+        data.put("logmessage", event.getMessage().getFormattedMessage());
+        data.put("thread", event.getThreadName());
+        data.putAll(getContextSnapshot(event.getContextData(), Constants.ENABLE_THREADLOCALS ? buffers.get() : null).getFields());
+        if (event.getThrown() != null) {
+            RenderedStackTrace stackTrace = renderStackTrace(event.getThrown());
+            data.put("stacktrace", stackTrace.text());
+            if (stackTrace.hash() != null) {
+                data.put("stackhash", stackTrace.hash());
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public void write(LogEvent event, JsonGenerator generator) throws IOException {
+        Buffers buffer = Constants.ENABLE_THREADLOCALS ? buffers.get() : new Buffers();
+        generator.writeStartObject();
+        generator.writeFieldName(DATETIME);
+        generator.writeString(buffer.formatDate(event.getTimeMillis()), 0, Buffers.DATE_LENGTH);
+        generator.writeRaw(getStaticFields());
+        writeField(generator, LOGGER, event.getLoggerFqcn());
+        writeField(generator, LEVEL, event.getLevel().toString());
+        generator.writeFieldName(MESSAGE);
+        writeMessage(generator, buffer, event.getMessage());
+        writeField(generator, THREAD, event.getThreadName());
+        generator.writeRaw(getContextSnapshot(event.getContextData(), Constants.ENABLE_THREADLOCALS ? buffer : null).getJson());
+        if (event.getThrown() != null) {
+            RenderedStackTrace stackTrace = renderStackTrace(event.getThrown());
+            writeField(generator, STACKTRACE, stackTrace.text());
+            writeField(generator, STACKHASH, stackTrace.hash());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Gets the fields having the same value for all the events, already serialized in JSON and preceded by
+     * a separator, in order to be copied after the first field of each document. They are serialized on first use
+     * since the configuration is given to the converter before being completed.
+     *
+     * @return The serialized fields
+     */
+    protected SerializableString getStaticFields() {
+        SerializableString fields = staticFields;
+        if (fields == null) {
+            StringBuilder json = new StringBuilder();
+            appendStaticField(json, HOST, configuration.getHost());
+            appendStaticField(json, ENVIRONMENT, configuration.getEnvironment());
+            appendStaticField(json, APPLICATION, configuration.getApplication());
+            fields = new SerializedString(json.toString());
+            staticFields = fields;
+        }
+        return fields;
+    }
+
+    /**
+     * Gets the snapshot of the given context data, reusing the last one of the thread if the context data
+     * is unchanged, or the last one of all threads if thread locals are disabled in Log4j.
+     *
+     * @param contextData The context data of the event
+     * @param buffer      The buffers of the current thread or {@code null} if thread locals are disabled
+     * @return The snapshot of the context data
+     */
+    protected ContextSnapshot getContextSnapshot(ReadOnlyStringMap contextData, Buffers buffer) {
+        Predicate<String> filter = getContextFilter();
+        ContextSnapshot snapshot = buffer != null ? buffer.context : lastContext;
+        if (snapshot == null || !snapshot.matches(contextData, filter)) {
+            snapshot = ContextSnapshot.of(contextData, filter);
+            if (buffer != null) {
+                buffer.context = snapshot;
+            } else {
+                lastContext = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the filter of the keys of the context data to add to the documents, created on first use
+     * since the configuration is given to the converter before being completed.
+     * The keys having the name of another field of the documents are always excluded.
+     *
+     * @return The filter of the keys
+     */
+    protected Predicate<String> getContextFilter() {
+        Predicate<String> filter = contextFilter;
+        if (filter == null) {
+            Predicate<String> included = configuration instanceof OpensearchConfiguration opensearch
+                    ? opensearch::isContextKeyIncluded
+                    : key -> true;
+            filter = key -> !RESERVED_KEYS.contains(key) && included.test(key);
+            contextFilter = filter;
+        }
+        return filter;
+    }
+
+    private static void appendStaticField(StringBuilder json, SerializableString name, String value) {
+        if (value != null) {
+            json.append(",\"").append(name.getValue()).append("\":\"");
+            JsonStringEncoder.getInstance().quoteAsString(value, json);
+            json.append('"');
+        }
+    }
+
+    /**
+     * Writes a field with a text value, or nothing if the value is {@code null}.
+     *
+     * @param generator The generator to use
+     * @param name      The name of the field
+     * @param value     The value of the field
+     * @throws IOException If the field cannot be written
+     */
+    protected void writeField(JsonGenerator generator, SerializableString name, String value) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeString(value);
+        }
+    }
+
+    /**
+     * Writes the formatted message, avoiding the creation of a new string when the message supports it.
+     *
+     * @param generator The generator to use
+     * @param buffer    The buffers of the current thread
+     * @param message   The message to write
+     * @throws IOException If the message cannot be written
+     */
+    protected void writeMessage(JsonGenerator generator, Buffers buffer, Message message) throws IOException {
+        if (message instanceof StringBuilderFormattable formattable) {
+            StringBuilder text = buffer.text();
+            formattable.formatTo(text);
+            generator.writeString(buffer.chars(text), 0, text.length());
+        } else {
+            generator.writeString(message.getFormattedMessage());
+        }
+    }
+
+    /**
+     * Renders the stack trace of the given throwable.
+     *
+     * @param throwable The throwable to render
+     * @return The stack trace
+     */
+    protected RenderedStackTrace renderStackTrace(Throwable throwable) {
+        return getStackTraceRenderer().render(throwable);
+    }
+
+    /**
+     * Gets the renderer of stack traces, created on first use since the configuration is given to the converter
+     * before being completed.
+     *
+     * @return The renderer of stack traces
+     */
+    protected StackTraceRenderer getStackTraceRenderer() {
+        StackTraceRenderer renderer = stackTraceRenderer;
+        if (renderer == null) {
+            renderer = configuration instanceof OpensearchConfiguration opensearch
+                    ? new StackTraceRenderer(opensearch.getStackTraceCacheSize(), opensearch.getStackTraceMaxDepth(), opensearch.isStackTraceHash())
+                    : new StackTraceRenderer(0, 0, false);
+            stackTraceRenderer = renderer;
+        }
+        return renderer;
+    }
+
+    /**
+     * Buffers reused for the events of a same thread.
+     */
+    protected static class Buffers {
+
+        static final int DATE_LENGTH = 24;
+        private static final int MAX_RETAINED_TEXT = 16 * 1024;
+        private static final long MILLIS_PER_DAY = 86_400_000L;
+
+        private final char[] date = new char[DATE_LENGTH];
+        private final StringBuilder text = new StringBuilder(256);
+        private char[] chars = new char[256];
+        private long dayStart = Long.MIN_VALUE;
+        private ContextSnapshot context;
+
+        /**
+         * Gets the text buffer emptied.
+         *
+         * @return The text buffer
+         */
+        StringBuilder text() {
+            if (text.capacity() > MAX_RETAINED_TEXT) {
+                text.setLength(MAX_RETAINED_TEXT);
+                text.trimToSize();
+            }
+            text.setLength(0);
+            return text;
+        }
+
+        /**
+         * Copies the given text into the reused characters array, or into a new array not retained
+         * if the text is longer than the maximum size kept between events.
+         *
+         * @param value The text to copy
+         * @return The characters array containing the text
+         */
+        char[] chars(StringBuilder value) {
+            if (value.length() > MAX_RETAINED_TEXT) {
+                char[] large = new char[value.length()];
+                value.getChars(0, value.length(), large, 0);
+                return large;
+            }
+            if (chars.length < value.length()) {
+                chars = new char[Math.min(MAX_RETAINED_TEXT, Math.max(value.length(), chars.length * 2))];
+            }
+            value.getChars(0, value.length(), chars, 0);
+            return chars;
+        }
+
+        /**
+         * Formats the given date in UTC with the pattern {@code yyyy-MM-dd'T'HH:mm:ss.SSS'Z'}.
+         * The date part is only computed again when the day changes.
+         *
+         * @param epochMillis The date in milliseconds since the epoch
+         * @return The characters array containing the formatted date
+         */
+        char[] formatDate(long epochMillis) {
+            long millisOfDay = Math.floorMod(epochMillis, MILLIS_PER_DAY);
+            long start = epochMillis - millisOfDay;
+            if (start != dayStart) {
+                LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(epochMillis, MILLIS_PER_DAY));
+                writeDigits(day.getYear(), 0, 4);
+                date[4] = '-';
+                writeDigits(day.getMonthValue(), 5, 2);
+                date[7] = '-';
+                writeDigits(day.getDayOfMonth(), 8, 2);
+                date[10] = 'T';
+                date[13] = ':';
+                date[16] = ':';
+                date[19] = '.';
+                date[23] = 'Z';
+                dayStart = start;
+            }
+            int time = (int) millisOfDay;
+            writeDigits(time / 3_600_000, 11, 2);
+            writeDigits(time / 60_000 % 60, 14, 2);
+            writeDigits(time / 1_000 % 60, 17, 2);
+            writeDigits(time % 1_000, 20, 3);
+            return date;
+        }
+
+        private void writeDigits(int value, int offset, int length) {
+            for (int i = offset + length - 1; i >= offset; i--) {
+                date[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+
+    }
+
+}
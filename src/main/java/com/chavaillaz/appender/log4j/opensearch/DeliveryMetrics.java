@@ -0,0 +1,365 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Metrics of the delivery pipeline of an appender, exposed through JMX and optionally Micrometer.
+ * <p>
+ * All counters are {@link LongAdder} so that updating them from many logging threads does not cause contention,
+ * their sum being only computed when they are read.
+ */
+@Log4j2
+public class DeliveryMetrics implements DeliveryMetricsMBean {
+
+    /**
+     * Domain of the names under which the metrics are registered in JMX.
+     */
+    public static final String JMX_DOMAIN = "com.chavaillaz.appender.log4j.opensearch";
+
+    private static final long[] LATENCY_BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000};
+    private static final Map<ObjectName, DeliveryMetrics> REGISTERED = new ConcurrentHashMap<>();
+
+    private final PendingBudget pendingBudget;
+    private final LongSupplier spoolSize;
+    private final LongAdder appendedEvents = new LongAdder();
+    private final LongAdder collapsedEvents = new LongAdder();
+    private final LongAdder rateLimitedEvents = new LongAdder();
+    private final LongAdder inFlightBulks = new LongAdder();
+    private final LongAdder sentBulks = new LongAdder();
+    private final LongAdder failedBulks = new LongAdder();
+    private final LongAdder sentDocuments = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder failedDocuments = new LongAdder();
+    private final LongAdder deadLetterDocuments = new LongAdder();
+    private final LongAdder spooledDocuments = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder latencyTotal = new LongAdder();
+    private final LongAdder[] latencyCounts = new LongAdder[LATENCY_BOUNDS.length + 1];
+    private ObjectName objectName;
+    private AutoCloseable micrometer;
+
+    /**
+     * Creates new metrics for a delivery pipeline.
+     *
+     * @param pendingBudget The budget accounting the pending and dropped events
+     * @param spoolSize     The supplier of the size used on disk by the spool
+     */
+    public DeliveryMetrics(PendingBudget pendingBudget, LongSupplier spoolSize) {
+        this.pendingBudget = pendingBudget;
+        this.spoolSize = spoolSize;
+        for (int i = 0; i < latencyCounts.length; i++) {
+            latencyCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Counts an event given to the appender.
+     */
+    public void onAppended() {
+        appendedEvents.increment();
+    }
+
+    /**
+     * Counts an event collapsed with the previous occurrences of the same event.
+     */
+    public void onCollapsed() {
+        collapsedEvents.increment();
+    }
+
+    /**
+     * Counts an event rejected because the rate of its level is exceeded.
+     */
+    public void onRateLimited() {
+        rateLimitedEvents.increment();
+    }
+
+    /**
+     * Counts a bulk request being sent.
+     *
+     * @return The current time to give back once the bulk request is completed
+     */
+    public long onBulkStarted() {
+        inFlightBulks.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the response received for a bulk request.
+     * Note that the documents it contains are counted separately, once the items of the response are checked.
+     *
+     * @param start    The time returned by {@link #onBulkStarted()}
+     * @param bytes    The number of bytes sent before compression or {@code 0} if unknown
+     * @param accepted {@code true} if the bulk has been accepted, {@code false} if refused with an HTTP error status
+     * @see #onSentDocuments(int)
+     */
+    public void onBulkResponse(long start, long bytes, boolean accepted) {
+        long latency = System.nanoTime() - start;
+        inFlightBulks.decrement();
+        latencyTotal.add(latency);
+        latencyCounts[latencyBucket(TimeUnit.NANOSECONDS.toMillis(latency))].increment();
+        if (accepted) {
+            sentBulks.increment();
+            sentBytes.add(bytes);
+        } else {
+            failedBulks.increment();
+        }
+    }
+
+    /**
+     * Counts the documents indexed successfully, according to the items of the response of a bulk request.
+     *
+     * @param documents The number of documents indexed
+     */
+    public void onSentDocuments(int documents) {
+        sentDocuments.add(documents);
+    }
+
+    /**
+     * Records a bulk request for which no response has been received.
+     */
+    public void onBulkFailed() {
+        inFlightBulks.decrement();
+        failedBulks.increment();
+    }
+
+    /**
+     * Counts a document refused by the server in the response of a bulk request.
+     */
+    public void onFailedDocument() {
+        failedDocuments.increment();
+    }
+
+    /**
+     * Counts a document given to the dead-letter handler.
+     */
+    public void onDeadLetter() {
+        deadLetterDocuments.increment();
+    }
+
+    /**
+     * Counts documents stored in the spool.
+     *
+     * @param documents The number of documents stored
+     */
+    public void onSpooled(int documents) {
+        spooledDocuments.add(documents);
+    }
+
+    /**
+     * Counts a retry of a bulk or of documents refused with a transient status.
+     */
+    public void onRetry() {
+        retries.increment();
+    }
+
+    private static int latencyBucket(long millis) {
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS.length && millis > LATENCY_BOUNDS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    @Override
+    public long getAppendedEvents() {
+        return appendedEvents.sum();
+    }
+
+    @Override
+    public long getCollapsedEvents() {
+        return collapsedEvents.sum();
+    }
+
+    @Override
+    public long getRateLimitedEvents() {
+        return rateLimitedEvents.sum();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return pendingBudget.getDroppedEvents();
+    }
+
+    @Override
+    public long getPendingEvents() {
+        return pendingBudget.getPendingEvents();
+    }
+
+    @Override
+    public long getPendingBytes() {
+        return pendingBudget.getPendingBytes();
+    }
+
+    @Override
+    public long getInFlightBulks() {
+        return inFlightBulks.sum();
+    }
+
+    @Override
+    public long getSentBulks() {
+        return sentBulks.sum();
+    }
+
+    @Override
+    public long getFailedBulks() {
+        return failedBulks.sum();
+    }
+
+    @Override
+    public long getSentDocuments() {
+        return sentDocuments.sum();
+    }
+
+    @Override
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    @Override
+    public long getFailedDocuments() {
+        return failedDocuments.sum();
+    }
+
+    @Override
+    public long getDeadLetterDocuments() {
+        return deadLetterDocuments.sum();
+    }
+
+    @Override
+    public long getSpooledDocuments() {
+        return spooledDocuments.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getSpoolSize() {
+        return spoolSize.getAsLong();
+    }
+
+    @Override
+    public long[] getBulkLatencyBounds() {
+        return LATENCY_BOUNDS.clone();
+    }
+
+    @Override
+    public long[] getBulkLatencyCounts() {
+        long[] counts = new long[latencyCounts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = latencyCounts[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public long getBulkLatencyTotal() {
+        return TimeUnit.NANOSECONDS.toMillis(latencyTotal.sum());
+    }
+
+    /**
+     * Gets the number of bulk responses received, accepted or not.
+     *
+     * @return The number of bulk responses
+     */
+    public long getBulkLatencyCount() {
+        long count = 0;
+        for (LongAdder latencyCount : latencyCounts) {
+            count += latencyCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of bulk responses received with a latency lower than or equal to the bound of the given bucket.
+     *
+     * @param bucket The index of the bucket in {@link #getBulkLatencyBounds()}
+     * @return The cumulative number of bulk responses
+     */
+    public long getBulkLatencyCumulativeCount(int bucket) {
+        long count = 0;
+        for (int i = 0; i <= bucket; i++) {
+            count += latencyCounts[i].sum();
+        }
+        return count;
+    }
+
+    /**
+     * Registers the metrics under the given name in JMX and in the global registry of Micrometer.
+     * If metrics are already registered in JMX with the same name (for instance during a reconfiguration),
+     * they are replaced by these ones. If these metrics are already registered (for instance when the delivery
+     * pipeline is shared by several appenders), they are kept under their first name.
+     *
+     * @param name       The name of the appender
+     * @param jmx        {@code true} to register the metrics in JMX
+     * @param micrometer {@code true} to register the metrics in Micrometer, which must be in the classpath
+     */
+    public synchronized void register(String name, boolean jmx, boolean micrometer) {
+        if (jmx && objectName == null) {
+            registerMBean(name);
+        }
+        if (micrometer && this.micrometer == null) {
+            try {
+                this.micrometer = MicrometerDeliveryMetrics.register(this, name);
+            } catch (LinkageError e) {
+                log.warn("Unable to register metrics of appender {}: Micrometer not found in classpath", name);
+            }
+        }
+    }
+
+    private void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName registeredName = new ObjectName(JMX_DOMAIN + ":type=OpensearchAppender,name=" + ObjectName.quote(name));
+            synchronized (REGISTERED) {
+                if (server.isRegistered(registeredName)) {
+                    server.unregisterMBean(registeredName);
+                }
+                server.registerMBean(this, registeredName);
+                REGISTERED.put(registeredName, this);
+            }
+            objectName = registeredName;
+        } catch (JMException e) {
+            log.warn("Unable to register metrics of appender {} in JMX: {}", name, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Unregisters the metrics from JMX and Micrometer, unless they have been replaced by other ones in JMX.
+     */
+    public synchronized void unregister() {
+        if (objectName != null) {
+            synchronized (REGISTERED) {
+                try {
+                    if (REGISTERED.remove(objectName, this)) {
+                        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                    }
+                } catch (JMException e) {
+                    log.warn("Unable to unregister metrics {} from JMX: {}", objectName, e.getMessage(), e);
+                }
+            }
+            objectName = null;
+        }
+        if (micrometer != null) {
+            try {
+                micrometer.close();
+            } catch (Exception e) {
+                log.warn("Unable to unregister metrics from Micrometer: {}", e.getMessage(), e);
+            }
+            micrometer = null;
+        }
+    }
+
+}
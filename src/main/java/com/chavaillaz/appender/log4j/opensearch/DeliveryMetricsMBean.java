@@ -0,0 +1,143 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+/**
+ * Management interface exposing through JMX the metrics of the delivery pipeline of an appender.
+ */
+public interface DeliveryMetricsMBean {
+
+    /**
+     * Gets the number of events given to the appender.
+     *
+     * @return The number of events
+     */
+    long getAppendedEvents();
+
+    /**
+     * Gets the number of events collapsed with the previous occurrences of the same event.
+     *
+     * @return The number of events
+     */
+    long getCollapsedEvents();
+
+    /**
+     * Gets the number of events rejected because the rate of their level was exceeded.
+     *
+     * @return The number of events
+     */
+    long getRateLimitedEvents();
+
+    /**
+     * Gets the number of events dropped because the limits of pending events or bytes were reached.
+     *
+     * @return The number of events
+     */
+    long getDroppedEvents();
+
+    /**
+     * Gets the number of events accepted but not yet sent.
+     *
+     * @return The number of events
+     */
+    long getPendingEvents();
+
+    /**
+     * Gets the number of bytes used by the encoded events not yet sent.
+     *
+     * @return The number of bytes
+     */
+    long getPendingBytes();
+
+    /**
+     * Gets the number of bulk requests currently waiting for their response.
+     *
+     * @return The number of bulk requests
+     */
+    long getInFlightBulks();
+
+    /**
+     * Gets the number of bulk requests accepted by the server, including the retries.
+     *
+     * @return The number of bulk requests
+     */
+    long getSentBulks();
+
+    /**
+     * Gets the number of bulk requests that could not be delivered or have been refused with an HTTP error status.
+     *
+     * @return The number of bulk requests
+     */
+    long getFailedBulks();
+
+    /**
+     * Gets the number of documents indexed successfully, excluding the ones refused in the responses of the bulk requests.
+     *
+     * @return The number of documents
+     */
+    long getSentDocuments();
+
+    /**
+     * Gets the number of bytes of the bulk requests accepted by the server, before compression.
+     * Note that only the bulks encoded directly in NDJSON (with streaming bulks) are measured.
+     *
+     * @return The number of bytes
+     */
+    long getSentBytes();
+
+    /**
+     * Gets the number of documents refused by the server in the responses of the bulk requests.
+     *
+     * @return The number of documents
+     */
+    long getFailedDocuments();
+
+    /**
+     * Gets the number of documents given to the dead-letter handler.
+     *
+     * @return The number of documents
+     */
+    long getDeadLetterDocuments();
+
+    /**
+     * Gets the number of documents stored in the spool.
+     *
+     * @return The number of documents
+     */
+    long getSpooledDocuments();
+
+    /**
+     * Gets the number of retries of bulks or documents refused with a transient status.
+     *
+     * @return The number of retries
+     */
+    long getRetries();
+
+    /**
+     * Gets the size used on disk by the spool.
+     *
+     * @return The number of bytes or {@code 0} if the spool is disabled
+     */
+    long getSpoolSize();
+
+    /**
+     * Gets the upper bounds of the buckets of the bulk latency histogram.
+     *
+     * @return The upper bounds in milliseconds
+     */
+    long[] getBulkLatencyBounds();
+
+    /**
+     * Gets the number of bulk responses received in each bucket of the bulk latency histogram.
+     * The last value counts the responses slower than the highest bound.
+     *
+     * @return The number of bulk responses per bucket
+     */
+    long[] getBulkLatencyCounts();
+
+    /**
+     * Gets the total time spent waiting for the bulk responses.
+     *
+     * @return The time in milliseconds
+     */
+    long getBulkLatencyTotal();
+
+}
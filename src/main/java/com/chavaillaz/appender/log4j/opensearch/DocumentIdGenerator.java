@@ -0,0 +1,94 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Generator of document identifiers on the client side, so that a document sent again after a timeout or replayed
+ * from the spool keeps the same identifier and is not indexed twice.
+ * <p>
+ * Identifiers are made of the current time (milliseconds), a hash of the host and process, and a sequence number,
+ * encoded in 20 characters with an alphabet sorted in ASCII order. Consecutive identifiers of an instance are thus
+ * increasing and share a common prefix, which keeps their lookup cheap for the cluster.
+ */
+public class DocumentIdGenerator {
+
+    /**
+     * Number of characters of the identifiers generated.
+     */
+    public static final int LENGTH = 20;
+
+    private static final char[] ALPHABET = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final long SEQUENCE_MASK = (1L << 40) - 1;
+
+    private final int node;
+    private final AtomicLong lastTimestamp = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong(ThreadLocalRandom.current().nextLong());
+
+    /**
+     * Creates a new generator of document identifiers.
+     *
+     * @param host The name of the host, identifying the instance together with the current process
+     */
+    public DocumentIdGenerator(String host) {
+        this.node = 31 * String.valueOf(host).hashCode() + Long.hashCode(ProcessHandle.current().pid());
+    }
+
+    /**
+     * Generates a new identifier.
+     *
+     * @return The identifier generated
+     */
+    public String next() {
+        char[] id = new char[LENGTH];
+        next(id);
+        return new String(id);
+    }
+
+    /**
+     * Generates a new identifier and writes it as raw characters with the given generator, without allocation.
+     *
+     * @param generator The generator in which to write the identifier
+     * @throws IOException If the identifier cannot be written
+     */
+    public void write(JsonGenerator generator) throws IOException {
+        long high = high();
+        long low = low(high);
+        for (int i = 0; i < LENGTH / 2; i++) {
+            generator.writeRaw(ALPHABET[(int) (high >>> (58 - 6 * i)) & 63]);
+        }
+        for (int i = 0; i < LENGTH / 2; i++) {
+            generator.writeRaw(ALPHABET[(int) (low >>> (54 - 6 * i)) & 63]);
+        }
+    }
+
+    private void next(char[] id) {
+        long high = high();
+        long low = low(high);
+        for (int i = 0; i < LENGTH / 2; i++) {
+            id[i] = ALPHABET[(int) (high >>> (58 - 6 * i)) & 63];
+            id[LENGTH / 2 + i] = ALPHABET[(int) (low >>> (54 - 6 * i)) & 63];
+        }
+    }
+
+    /**
+     * Computes the first 64 bits of the identifier: the time on 48 bits (never going backward
+     * even if the clock does) followed by the first 16 bits of the node.
+     */
+    private long high() {
+        long timestamp = lastTimestamp.accumulateAndGet(System.currentTimeMillis(), Math::max);
+        return timestamp << 16 | (node >>> 16);
+    }
+
+    /**
+     * Computes the last 60 bits of the identifier: the last 4 bits of the first part,
+     * the last 16 bits of the node and the sequence on 40 bits.
+     */
+    private long low(long high) {
+        return (high & 0xF) << 56 | (long) (node & 0xFFFF) << 40 | sequence.getAndIncrement() & SEQUENCE_MASK;
+    }
+
+}
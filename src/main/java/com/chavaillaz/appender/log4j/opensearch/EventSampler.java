@@ -0,0 +1,194 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.createThreadFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.apache.logging.log4j.util.StringMap;
+
+/**
+ * Stage applied to the events before their delivery, collapsing the events repeated within a time window
+ * and limiting the rate of events per level, so that a flood of identical events (for instance during an incident)
+ * is rejected cheaply on the logging thread instead of overloading the delivery pipeline and the cluster.
+ * <p>
+ * Events are considered repeated when they have the same logger, level, message template and exception type.
+ * The first occurrence is delivered directly, whereas the next ones within the window are counted and delivered
+ * at the end of the window as a single event, copy of the first one with the number of occurrences collapsed
+ * in its context data.
+ */
+public class EventSampler implements AutoCloseable {
+
+    /**
+     * Key of the context data containing the number of occurrences collapsed into an event.
+     */
+    public static final String OCCURRENCES_KEY = "occurrences";
+
+    private static final int MAX_TRACKED_EVENTS = 10_000;
+
+    private final long window;
+    private final Map<Level, TokenBucket> buckets = new HashMap<>();
+    private final Map<Key, Occurrences> occurrences = new ConcurrentHashMap<>();
+    private final DeliveryMetrics metrics;
+    private final Consumer<LogEvent> receiver;
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Creates a new sampling stage.
+     *
+     * @param configuration The configuration with the deduplication window and the rate limits per level
+     * @param metrics       The metrics counting the events rejected
+     * @param receiver      The receiver of the events collapsing the repeated occurrences
+     */
+    public EventSampler(OpensearchConfiguration configuration, DeliveryMetrics metrics, Consumer<LogEvent> receiver) {
+        this.window = configuration.getDeduplicationWindow().toNanos();
+        this.metrics = metrics;
+        this.receiver = receiver;
+        configuration.getRateLimits().forEach((level, rate) -> buckets.put(level, new TokenBucket(rate)));
+        if (window > 0) {
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(createThreadFactory(configuration, "OpensearchSampler"));
+            this.sweeper.scheduleWithFixedDelay(this::expire, window, window, TimeUnit.NANOSECONDS);
+        } else {
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * Indicates if the sampling stage is needed for the given configuration.
+     *
+     * @param configuration The configuration of the appender
+     * @return {@code true} if a deduplication window or rate limits are configured, {@code false} otherwise
+     */
+    public static boolean isEnabled(OpensearchConfiguration configuration) {
+        return configuration.getDeduplicationWindow().isPositive() || !configuration.getRateLimits().isEmpty();
+    }
+
+    /**
+     * Decides if the given event must be delivered, or if it is collapsed with the previous occurrences
+     * or exceeds the rate of its level. Note that the event is only copied when it starts a new window.
+     *
+     * @param event The logging event
+     * @return {@code true} if the event must be delivered, {@code false} if it has been rejected
+     */
+    public boolean sample(LogEvent event) {
+        if (window > 0 && isRepeated(event)) {
+            metrics.onCollapsed();
+            return false;
+        }
+        TokenBucket bucket = buckets.get(event.getLevel());
+        if (bucket != null && !bucket.tryAcquire()) {
+            metrics.onRateLimited();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isRepeated(LogEvent event) {
+        Key key = Key.of(event);
+        long now = System.nanoTime();
+        Occurrences current = occurrences.get(key);
+        if (current != null && now - current.end < 0 && current.increment()) {
+            return true;
+        }
+        if (current == null && occurrences.size() >= MAX_TRACKED_EVENTS) {
+            return false;
+        }
+        Occurrences previous = occurrences.put(key, new Occurrences(event.toImmutable(), now + window));
+        if (previous != null) {
+            collapse(previous);
+        }
+        return false;
+    }
+
+    /**
+     * Delivers the events collapsing the occurrences of the windows elapsed.
+     */
+    protected void expire() {
+        long now = System.nanoTime();
+        occurrences.forEach((key, current) -> {
+            if (now - current.end >= 0 && occurrences.remove(key, current)) {
+                collapse(current);
+            }
+        });
+    }
+
+    private void collapse(Occurrences current) {
+        long count = current.close();
+        if (count > 0) {
+            StringMap contextData = new SortedArrayStringMap(current.first.getContextData());
+            contextData.putValue(OCCURRENCES_KEY, String.valueOf(count));
+            receiver.accept(new Log4jLogEvent.Builder(current.first)
+                    .setContextData(contextData)
+                    .setTimeMillis(System.currentTimeMillis())
+                    .build());
+        }
+    }
+
+    /**
+     * Stops the expiration of the windows and delivers the events collapsing the occurrences not yet delivered.
+     */
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        occurrences.forEach((key, current) -> {
+            if (occurrences.remove(key, current)) {
+                collapse(current);
+            }
+        });
+    }
+
+    private record Key(String logger, Level level, String template, String thrown) {
+
+        static Key of(LogEvent event) {
+            String template = event.getMessage().getFormat();
+            return new Key(event.getLoggerName(), event.getLevel(),
+                    template != null ? template : event.getMessage().getFormattedMessage(),
+                    event.getThrown() != null ? event.getThrown().getClass().getName() : null);
+        }
+
+    }
+
+    private static class Occurrences {
+
+        private final LogEvent first;
+        private final long end;
+        private final AtomicLong count = new AtomicLong();
+
+        private Occurrences(LogEvent first, long end) {
+            this.first = first;
+            this.end = end;
+        }
+
+        /**
+         * Counts a new occurrence, unless the window has already been delivered.
+         *
+         * @return {@code true} if the occurrence has been counted, {@code false} otherwise
+         */
+        private boolean increment() {
+            return count.getAndIncrement() >= 0;
+        }
+
+        /**
+         * Closes the window so that no more occurrences are counted.
+         *
+         * @return The number of occurrences counted
+         */
+        private long close() {
+            return count.getAndSet(Long.MIN_VALUE);
+        }
+
+    }
+
+}
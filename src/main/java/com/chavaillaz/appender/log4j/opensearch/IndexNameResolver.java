@@ -0,0 +1,83 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Resolver of the index names, caching the last name computed until the time crosses the next suffix boundary.
+ * <p>
+ * The period during which a name stays the same is detected once from the suffix pattern, as the smallest unit
+ * (up to days) whose increment changes the formatted suffix. Periods longer than a day (weeks, months or years)
+ * are still cached for a day at most, as their boundaries are always aligned with the start of a day.
+ */
+public class IndexNameResolver {
+
+    private static final List<ChronoUnit> UNITS = List.of(ChronoUnit.MILLIS, ChronoUnit.SECONDS, ChronoUnit.MINUTES, ChronoUnit.HOURS);
+    private static final int PROBES = 24;
+    private static final LocalDateTime REFERENCE = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private final String index;
+    private final DateTimeFormatter suffix;
+    private final ZoneId zone;
+    private final ChronoUnit period;
+    private volatile Period current = new Period(0, 0, null);
+
+    /**
+     * Creates a new index name resolver.
+     *
+     * @param index  The name of the index
+     * @param suffix The format of the date suffix or {@code null} to always use the index name
+     * @param zone   The time zone in which to format the suffix
+     */
+    public IndexNameResolver(String index, DateTimeFormatter suffix, ZoneId zone) {
+        this.index = index;
+        this.suffix = suffix;
+        this.zone = zone;
+        this.period = suffix != null ? detectPeriod(suffix) : ChronoUnit.DAYS;
+    }
+
+    private static ChronoUnit detectPeriod(DateTimeFormatter suffix) {
+        String reference = suffix.format(REFERENCE);
+        for (ChronoUnit unit : UNITS) {
+            // Several increments are checked for the patterns changing less often (for instance AM/PM markers)
+            for (int increment = 1; increment < PROBES; increment++) {
+                if (!reference.equals(suffix.format(REFERENCE.plus(increment, unit)))) {
+                    return unit;
+                }
+            }
+        }
+        return ChronoUnit.DAYS;
+    }
+
+    /**
+     * Resolves the name of the index for the given time.
+     *
+     * @param timestamp The time in milliseconds since the epoch
+     * @return The index name with the suffix of the given time
+     */
+    public String resolve(long timestamp) {
+        if (suffix == null) {
+            return index;
+        }
+        Period cached = current;
+        if (timestamp >= cached.start() && timestamp < cached.end()) {
+            return cached.name();
+        }
+        ZonedDateTime start = Instant.ofEpochMilli(timestamp).atZone(zone).truncatedTo(period);
+        Period computed = new Period(
+                start.toInstant().toEpochMilli(),
+                start.plus(1, period).toInstant().toEpochMilli(),
+                index + start.format(suffix));
+        current = computed;
+        return computed.name();
+    }
+
+    private record Period(long start, long end, String name) {
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.MutableLogEvent;
+import org.apache.logging.log4j.core.util.Log4jThreadFactory;
+
+/**
+ * Preallocated ring buffer of mutable logging events, filled by multiple producers
+ * and drained by a single consumer thread.
+ * <p>
+ * Producers claim a sequence, copy the event into the corresponding slot and publish it.
+ * The consumer processes the slots in order of their sequence and frees them once processed.
+ * No object is allocated per event, except what Log4j needs to copy non-reusable messages.
+ * <p>
+ * When stopped, the consumer only exits once no producer is publishing anymore, so that an event claimed
+ * concurrently is either refused or processed, but never left in a slot.
+ */
+@Log4j2
+public class LogEventRingBuffer {
+
+    private final MutableLogEvent[] slots;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicInteger publishers = new AtomicInteger();
+    @Getter
+    private final WaitStrategy waitStrategy;
+    private final Consumer<LogEvent> handler;
+    private final Thread consumer;
+    private volatile boolean consumerWaiting;
+    private volatile boolean running;
+
+    /**
+     * Creates a new ring buffer.
+     *
+     * @param size         The number of slots, rounded up to the next power of two
+     * @param waitStrategy The strategy to use when waiting for events or free slots
+     * @param handler      The handler processing the events, called from the consumer thread only
+     */
+    public LogEventRingBuffer(int size, WaitStrategy waitStrategy, Consumer<LogEvent> handler) {
+        int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.slots = new MutableLogEvent[capacity];
+        this.published = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        this.handler = handler;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new MutableLogEvent();
+            published.set(i, -1);
+        }
+        this.consumer = Log4jThreadFactory.createDaemonThreadFactory("OpensearchRingBuffer").newThread(this::consume);
+    }
+
+    /**
+     * Gets the number of slots of the ring buffer.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Gets the number of events published but not yet processed.
+     *
+     * @return The number of pending events
+     */
+    public long getPending() {
+        return Math.max(0, claimed.get() - consumed.get());
+    }
+
+    /**
+     * Starts the consumer thread.
+     */
+    public void start() {
+        running = true;
+        consumer.start();
+    }
+
+    /**
+     * Stops the consumer thread once all the published events have been processed,
+     * or when the given timeout is reached.
+     *
+     * @param timeout  The maximum time to wait
+     * @param timeUnit The unit of the timeout
+     * @return {@code true} if all events have been processed, {@code false} otherwise
+     */
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(Math.max(1, timeUnit.toMillis(timeout)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return getPending() == 0;
+    }
+
+    /**
+     * Copies the given event into a slot of the ring buffer, waiting for a free slot if the ring buffer is full,
+     * at most for the given timeout and only as long as the ring buffer is not stopped.
+     *
+     * @param event   The event to publish
+     * @param timeout The maximum time to wait for a free slot
+     * @return {@code true} if the event has been published, {@code false} if no slot was freed in time
+     * or if the ring buffer is stopped
+     */
+    public boolean publish(LogEvent event, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        int attempts = 0;
+        while (!tryPublish(event)) {
+            if (!running || System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            waitStrategy.await(attempts++);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the given event into a slot of the ring buffer only if a slot is free.
+     *
+     * @param event The event to publish
+     * @return {@code true} if the event has been published, {@code false} if the ring buffer is full or stopped
+     */
+    public boolean tryPublish(LogEvent event) {
+        // Registered before checking if running, so that the consumer does not exit while the event is claimed
+        publishers.incrementAndGet();
+        try {
+            long sequence;
+            do {
+                sequence = claimed.get();
+                if (!running || sequence - slots.length >= consumed.get()) {
+                    return false;
+                }
+            } while (!claimed.compareAndSet(sequence, sequence + 1));
+            write(sequence, event);
+            return true;
+        } finally {
+            publishers.decrementAndGet();
+        }
+    }
+
+    private void write(long sequence, LogEvent event) {
+        int index = (int) (sequence & mask);
+        slots[index].initFrom(event);
+        published.set(index, sequence);
+        if (waitStrategy.isSignalled() && consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void consume() {
+        long next = consumed.get();
+        int attempts = 0;
+        while (running || publishers.get() > 0 || next < claimed.get()) {
+            int index = (int) (next & mask);
+            if (published.get(index) == next) {
+                process(slots[index]);
+                next++;
+                consumed.set(next);
+                attempts = 0;
+            } else {
+                consumerWaiting = true;
+                if (published.get(index) != next) {
+                    waitStrategy.await(attempts++);
+                }
+                consumerWaiting = false;
+            }
+        }
+    }
+
+    private void process(MutableLogEvent event) {
+        try {
+            handler.accept(event);
+        } catch (Exception e) {
+            log.warn("Unable to process event: {}", e.getMessage(), e);
+        } finally {
+            event.clear();
+        }
+    }
+
+}
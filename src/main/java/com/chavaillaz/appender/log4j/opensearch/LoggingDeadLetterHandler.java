@@ -0,0 +1,48 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.Optional;
+
+import lombok.extern.log4j.Log4j2;
+import org.opensearch.client.opensearch._types.ErrorCause;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+
+/**
+ * Default dead-letter handler, writing the refused documents in the logs of the appender.
+ * Only the beginning of the documents is written, in order not to flood the logs with large documents
+ * (such as the ones with stack traces) that may also be sent to the appender itself.
+ */
+@Log4j2
+public class LoggingDeadLetterHandler implements DeadLetterHandler {
+
+    /**
+     * Maximum number of characters of a document written in the logs.
+     */
+    public static final int MAX_DOCUMENT_LENGTH = 256;
+
+    /**
+     * Abbreviates the given document to {@link #MAX_DOCUMENT_LENGTH} characters.
+     *
+     * @param document The document in JSON format
+     * @return The beginning of the document followed by its total length if it has been abbreviated
+     */
+    protected static String abbreviate(String document) {
+        if (document == null || document.length() <= MAX_DOCUMENT_LENGTH) {
+            return document;
+        }
+        return document.substring(0, MAX_DOCUMENT_LENGTH) + "... (" + document.length() + " characters)";
+    }
+
+    @Override
+    public void handle(BulkResponseItem item, String document) {
+        if (item == null) {
+            log.warn("Document refused after all retries: {}", abbreviate(document));
+            return;
+        }
+        log.warn("Document refused by index {} with status {} ({}): {}",
+                item.index(),
+                item.status(),
+                Optional.ofNullable(item.error()).map(ErrorCause::reason).orElse(null),
+                abbreviate(document));
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Binding of the metrics of a delivery pipeline to Micrometer, reading the counters only when the meters are polled.
+ * Note that Micrometer is an optional dependency, so this class must only be loaded when Micrometer metrics are enabled.
+ */
+public class MicrometerDeliveryMetrics implements MeterBinder, AutoCloseable {
+
+    private static final String PREFIX = "opensearch.appender.";
+
+    private final DeliveryMetrics metrics;
+    private final Tags tags;
+    private final List<Meter> meters = new ArrayList<>();
+    private MeterRegistry registry;
+
+    /**
+     * Creates a new binding of the given metrics.
+     *
+     * @param metrics The metrics of the delivery pipeline
+     * @param name    The name of the appender, used as tag of all the meters
+     */
+    public MicrometerDeliveryMetrics(DeliveryMetrics metrics, String name) {
+        this.metrics = metrics;
+        this.tags = Tags.of("appender", name);
+    }
+
+    /**
+     * Binds the given metrics to the global registry of Micrometer.
+     *
+     * @param metrics The metrics of the delivery pipeline
+     * @param name    The name of the appender
+     * @return The binding to close in order to remove the meters from the registry
+     */
+    public static MicrometerDeliveryMetrics register(DeliveryMetrics metrics, String name) {
+        MicrometerDeliveryMetrics binding = new MicrometerDeliveryMetrics(metrics, name);
+        binding.bindTo(Metrics.globalRegistry);
+        return binding;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        counter("events.appended", "events", "Events given to the appender", DeliveryMetrics::getAppendedEvents);
+        counter("events.collapsed", "events", "Events collapsed with previous occurrences", DeliveryMetrics::getCollapsedEvents);
+        counter("events.ratelimited", "events", "Events rejected due to the rate limit of their level", DeliveryMetrics::getRateLimitedEvents);
+        counter("events.dropped", "events", "Events dropped due to the limits", DeliveryMetrics::getDroppedEvents);
+        gauge("events.pending", "events", "Events accepted but not yet sent", DeliveryMetrics::getPendingEvents);
+        gauge("events.pending.bytes", "bytes", "Bytes of encoded events not yet sent", DeliveryMetrics::getPendingBytes);
+        gauge("bulks.inflight", "requests", "Bulk requests waiting for their response", DeliveryMetrics::getInFlightBulks);
+        counter("bulks.sent", "requests", "Bulk requests accepted", DeliveryMetrics::getSentBulks);
+        counter("bulks.failed", "requests", "Bulk requests not delivered or refused", DeliveryMetrics::getFailedBulks);
+        counter("documents.sent", "documents", "Documents indexed successfully", DeliveryMetrics::getSentDocuments);
+        counter("documents.sent.bytes", "bytes", "Bytes of accepted bulk requests before compression (streaming bulks only)", DeliveryMetrics::getSentBytes);
+        counter("documents.failed", "documents", "Documents refused in bulk responses", DeliveryMetrics::getFailedDocuments);
+        counter("documents.deadletter", "documents", "Documents given to the dead-letter handler", DeliveryMetrics::getDeadLetterDocuments);
+        counter("documents.spooled", "documents", "Documents stored in the spool", DeliveryMetrics::getSpooledDocuments);
+        counter("retries", "retries", "Retries of bulks or documents refused with a transient status", DeliveryMetrics::getRetries);
+        gauge("spool.size", "bytes", "Size used on disk by the spool", DeliveryMetrics::getSpoolSize);
+
+        meters.add(FunctionTimer.builder(PREFIX + "bulks.latency", metrics,
+                        DeliveryMetrics::getBulkLatencyCount,
+                        DeliveryMetrics::getBulkLatencyTotal,
+                        TimeUnit.MILLISECONDS)
+                .description("Time spent waiting for bulk responses")
+                .tags(tags)
+                .register(registry));
+        long[] bounds = metrics.getBulkLatencyBounds();
+        for (int bucket = 0; bucket < bounds.length; bucket++) {
+            int index = bucket;
+            meters.add(FunctionCounter.builder(PREFIX + "bulks.latency.histogram", metrics, m -> m.getBulkLatencyCumulativeCount(index))
+                    .description("Bulk responses received within the latency bound (ms)")
+                    .tags(tags)
+                    .tag("le", String.valueOf(bounds[bucket]))
+                    .register(registry));
+        }
+    }
+
+    private void counter(String name, String unit, String description, ToDoubleFunction<DeliveryMetrics> function) {
+        meters.add(FunctionCounter.builder(PREFIX + name, metrics, function)
+                .description(description)
+                .baseUnit(unit)
+                .tags(tags)
+                .register(registry));
+    }
+
+    private void gauge(String name, String unit, String description, ToDoubleFunction<DeliveryMetrics> function) {
+        meters.add(Gauge.builder(PREFIX + name, metrics, function)
+                .description(description)
+                .baseUnit(unit)
+                .tags(tags)
+                .register(registry));
+    }
+
+    @Override
+    public void close() {
+        if (registry != null) {
+            meters.forEach(registry::remove);
+            meters.clear();
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.Iterator;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.opensearch.client.transport.httpclient5.internal.Node;
+import org.opensearch.client.transport.httpclient5.internal.NodeSelector;
+
+/**
+ * Selections of the nodes to which the requests can be sent, among the configured or discovered ones.
+ * Note that the roles of the nodes are only known once discovered by sniffing, so the nodes configured
+ * with their URL are always kept.
+ */
+@Getter
+@AllArgsConstructor
+public enum NodeSelection {
+
+    /**
+     * Sends the requests to any node.
+     */
+    ANY(NodeSelector.ANY),
+
+    /**
+     * Sends the requests to any node except the dedicated cluster managers, which should not coordinate bulks.
+     */
+    SKIP_DEDICATED_CLUSTER_MANAGERS(NodeSelector.SKIP_DEDICATED_CLUSTER_MANAGERS),
+
+    /**
+     * Sends the requests only to the ingest nodes.
+     */
+    INGEST(NodeSelection::selectIngest);
+
+    /**
+     * Selector removing the nodes not matching this selection.
+     */
+    private final NodeSelector selector;
+
+    private static void selectIngest(Iterable<Node> nodes) {
+        for (Iterator<Node> iterator = nodes.iterator(); iterator.hasNext(); ) {
+            Node node = iterator.next();
+            if (node.getRoles() != null && !node.getRoles().isIngest()) {
+                iterator.remove();
+            }
+        }
+    }
+
+}
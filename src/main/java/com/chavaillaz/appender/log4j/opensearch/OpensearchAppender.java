@@ -2,12 +2,18 @@ package com.chavaillaz.appender.log4j.opensearch;
 
 import static com.chavaillaz.appender.CommonUtils.getInitialHostname;
 import static com.chavaillaz.appender.CommonUtils.getProperty;
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.createThreadFactory;
 import static org.apache.logging.log4j.core.Appender.ELEMENT_TYPE;
 import static org.apache.logging.log4j.core.Core.CATEGORY_NAME;
 import static org.apache.logging.log4j.core.layout.PatternLayout.createDefaultLayout;
 
 import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import com.chavaillaz.appender.LogDelivery;
 import com.chavaillaz.appender.log4j.AbstractLogDeliveryAppender;
@@ -16,6 +22,7 @@ import com.chavaillaz.appender.log4j.LogConverter;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Filter;
 import org.apache.logging.log4j.core.Layout;
 import org.apache.logging.log4j.core.LogEvent;
@@ -31,6 +38,11 @@ import org.apache.logging.log4j.core.config.plugins.validation.constraints.Requi
 @Plugin(name = "OpensearchAppender", category = CATEGORY_NAME, elementType = ELEMENT_TYPE)
 public class OpensearchAppender extends AbstractLogDeliveryAppender<OpensearchConfiguration> {
 
+    private LogEventRingBuffer ringBuffer;
+    private EventSampler sampler;
+    private ExecutorService virtualThreadExecutor;
+    private Semaphore virtualThreadPermits;
+
     protected OpensearchAppender(String name, Filter filter, Layout<?> layout, OpensearchConfiguration configuration) {
         super(name, filter, layout, configuration);
     }
@@ -42,9 +54,236 @@ public class OpensearchAppender extends AbstractLogDeliveryAppender<OpensearchCo
 
     @Override
     public LogDelivery createLogDeliveryHandler() {
+        if (getLogConfiguration().isSharedDelivery()) {
+            return new SharedLogDelivery(getLogConfiguration());
+        }
         return new OpensearchLogDelivery(getLogConfiguration());
     }
 
+    /**
+     * Gets the delivery pipeline of this appender, which may be shared with other appenders.
+     *
+     * @return The delivery pipeline or {@code null} if the appender is not started
+     */
+    protected OpensearchLogDelivery getDelivery() {
+        LogDelivery handler = getLogDeliveryHandler();
+        if (handler instanceof SharedLogDelivery shared) {
+            return shared.getDelivery();
+        }
+        return handler instanceof OpensearchLogDelivery delivery ? delivery : null;
+    }
+
+    @Override
+    public void start() {
+        super.start();
+        OpensearchLogDelivery delivery = getDelivery();
+        if (getLogDeliveryHandler() instanceof SharedLogDelivery shared) {
+            shared.registerMetrics(getName());
+        } else if (delivery != null) {
+            delivery.getMetrics().register(getName(),
+                    getLogConfiguration().isJmxMetrics(),
+                    getLogConfiguration().isMicrometerMetrics());
+        }
+        if (delivery != null && EventSampler.isEnabled(getLogConfiguration())) {
+            sampler = new EventSampler(getLogConfiguration(), delivery.getMetrics(), this::appendSampled);
+        }
+        if (getLogConfiguration().getRingBufferSize() > 0) {
+            ringBuffer = new LogEventRingBuffer(
+                    getLogConfiguration().getRingBufferSize(),
+                    getLogConfiguration().getWaitStrategy(),
+                    this::deliver);
+            ringBuffer.start();
+        }
+        if (getLogConfiguration().isVirtualThreads()) {
+            int concurrency = getLogConfiguration().getVirtualThreadConcurrency();
+            virtualThreadPermits = new Semaphore(concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors(), true);
+            virtualThreadExecutor = Executors.newThreadPerTaskExecutor(createThreadFactory(getLogConfiguration(), "OpensearchDelivery"));
+        }
+    }
+
+    /**
+     * Stops the appender within the given timeout (or the shutdown timeout of the configuration if not given):
+     * the intake of events is stopped, the pending events are delivered and the documents not acknowledged
+     * before the deadline are stored in the spool (if enabled) or given to the dead-letter handler.
+     *
+     * @param timeout  The maximum time to wait or {@code 0} to use the shutdown timeout of the configuration
+     * @param timeUnit The unit of the timeout
+     * @return {@code true} if the appender has been stopped, {@code false} otherwise
+     */
+    @Override
+    public boolean stop(long timeout, TimeUnit timeUnit) {
+        setStopping();
+        long start = System.nanoTime();
+        long deadline = start + (timeout > 0 ? timeUnit.toNanos(timeout) : getLogConfiguration().getShutdownTimeout().toNanos());
+        OpensearchLogDelivery delivery = getDelivery();
+        DeliveryMetrics metrics = delivery != null ? delivery.getMetrics() : null;
+        long sent = metrics != null ? metrics.getSentDocuments() : 0;
+        long spooled = metrics != null ? metrics.getSpooledDocuments() : 0;
+        long deadLetter = metrics != null ? metrics.getDeadLetterDocuments() : 0;
+        long dropped = metrics != null ? metrics.getDroppedEvents() : 0;
+        LogDelivery handler = getLogDeliveryHandler();
+        if (handler instanceof SharedLogDelivery shared) {
+            shared.setShutdownDeadline(deadline);
+        } else if (delivery != null) {
+            delivery.setShutdownDeadline(deadline);
+        }
+
+        if (sampler != null) {
+            sampler.close();
+        }
+        long lost = 0;
+        if (ringBuffer != null && !ringBuffer.stop(remaining(deadline), TimeUnit.NANOSECONDS)) {
+            lost = ringBuffer.getPending();
+            LOGGER.warn("Events still pending in ring buffer of appender {}: {}", getName(), lost);
+        }
+        if (virtualThreadExecutor != null) {
+            stopVirtualThreads(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        boolean stopped = super.stop(remaining(deadline), TimeUnit.NANOSECONDS);
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (handler instanceof SharedLogDelivery shared && !shared.isPipelineClosed()) {
+            // The figures of the pipeline also include the documents of the other appenders still using it
+            LOGGER.info("Appender {} stopped in {} ms, leaving the shared delivery pipeline: {} events lost",
+                    getName(), elapsed, lost);
+        } else if (metrics != null) {
+            LOGGER.info("Appender {} stopped in {} ms: {} documents sent, {} stored in spool, {} given to dead-letter handler, {} lost",
+                    getName(), elapsed,
+                    metrics.getSentDocuments() - sent,
+                    metrics.getSpooledDocuments() - spooled,
+                    metrics.getDeadLetterDocuments() - deadLetter,
+                    lost + metrics.getDroppedEvents() - dropped);
+        }
+        return stopped;
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    @Override
+    public void append(LogEvent loggingEvent) {
+        if (sampler == null || sampler.sample(loggingEvent)) {
+            appendSampled(loggingEvent);
+        }
+    }
+
+    /**
+     * Appends the given event once it passed the sampling stage (if enabled).
+     *
+     * @param loggingEvent The event to append
+     */
+    protected void appendSampled(LogEvent loggingEvent) {
+        OpensearchLogDelivery delivery = getDelivery();
+        if (delivery != null && !delivery.accept(loggingEvent, getLogConfiguration())) {
+            return;
+        }
+
+        if (ringBuffer != null) {
+            publish(delivery, loggingEvent);
+        } else if (delivery != null && delivery.isEventEncoding(getLogConfiguration())) {
+            delivery.send(loggingEvent, getLogConfiguration());
+        } else if (virtualThreadExecutor != null) {
+            executeOnVirtualThread(delivery, loggingEvent);
+        } else {
+            super.append(loggingEvent);
+        }
+    }
+
+    /**
+     * Delivers the given event on a new virtual thread once a permit is acquired, in order to limit the number
+     * of deliveries waiting or running on virtual threads, and with them the copies of the events they hold.
+     * The logging thread waits for a permit only with the blocking overflow policy and at most for the overflow
+     * timeout. The event is dropped if no permit is acquired in time or if the appender has been stopped.
+     *
+     * @param delivery     The delivery handler accounting the pending events
+     * @param loggingEvent The event to deliver
+     */
+    private void executeOnVirtualThread(OpensearchLogDelivery delivery, LogEvent loggingEvent) {
+        if (acquireVirtualThreadPermit()) {
+            Runnable task = createLogDeliveryTask(loggingEvent);
+            try {
+                virtualThreadExecutor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        virtualThreadPermits.release();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                virtualThreadPermits.release();
+            }
+        }
+        if (delivery != null) {
+            delivery.reject();
+            delivery.getPendingBudget().drop(1);
+        }
+    }
+
+    private boolean acquireVirtualThreadPermit() {
+        if (getLogConfiguration().getOverflowPolicy() != OverflowPolicy.BLOCK) {
+            return virtualThreadPermits.tryAcquire();
+        }
+        try {
+            return virtualThreadPermits.tryAcquire(getLogConfiguration().getOverflowTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Waits for the deliveries running on virtual threads to be completed before stopping the appender.
+     *
+     * @param timeout  The maximum time to wait
+     * @param timeUnit The unit of the timeout
+     */
+    private void stopVirtualThreads(long timeout, TimeUnit timeUnit) {
+        virtualThreadExecutor.shutdown();
+        try {
+            if (!virtualThreadExecutor.awaitTermination(timeout, timeUnit)) {
+                LOGGER.warn("Deliveries still running on virtual threads of appender {}", getName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Publishes the given event in the ring buffer, waiting for a free slot only with the blocking overflow policy
+     * and at most for the overflow timeout. The event is dropped if it cannot be published in time
+     * or if the ring buffer has been stopped in the meantime.
+     *
+     * @param delivery     The delivery handler accounting the pending events
+     * @param loggingEvent The event to publish
+     */
+    private void publish(OpensearchLogDelivery delivery, LogEvent loggingEvent) {
+        boolean published = getLogConfiguration().getOverflowPolicy() == OverflowPolicy.BLOCK
+                ? ringBuffer.publish(loggingEvent, getLogConfiguration().getOverflowTimeout())
+                : ringBuffer.tryPublish(loggingEvent);
+        if (!published && delivery != null) {
+            delivery.reject();
+            delivery.getPendingBudget().drop(1);
+        }
+    }
+
+    /**
+     * Delivers the given event from the consumer thread of the ring buffer,
+     * either by encoding it directly or by converting it into a document.
+     *
+     * @param loggingEvent The event to deliver, which is reused once this method returns
+     */
+    protected void deliver(LogEvent loggingEvent) {
+        LogDelivery handler = getLogDeliveryHandler();
+        OpensearchLogDelivery delivery = getDelivery();
+        if (delivery != null && delivery.isEventEncoding(getLogConfiguration())) {
+            delivery.send(loggingEvent, getLogConfiguration());
+        } else if (handler != null) {
+            handler.send(getLogConfiguration().getConverter().convert(loggingEvent));
+        }
+    }
+
     @Override
     public Runnable createLogDeliveryTask(LogEvent loggingEvent) {
         LogConverter converter = getLogConfiguration().getConverter();
@@ -86,6 +325,9 @@ public class OpensearchAppender extends AbstractLogDeliveryAppender<OpensearchCo
         @PluginBuilderAttribute("IndexSuffix")
         private String indexSuffix = getProperty("INDEX_SUFFIX", "");
 
+        @PluginBuilderAttribute("IndexByEventTime")
+        private boolean indexByEventTime = false;
+
         @PluginBuilderAttribute("Url")
         private String url = getProperty("OPENSEARCH_URL", null);
 
@@ -101,12 +343,150 @@ public class OpensearchAppender extends AbstractLogDeliveryAppender<OpensearchCo
         @PluginBuilderAttribute("ApiKey")
         private String apiKey = getProperty("OPENSEARCH_API_KEY", null);
 
+        @PluginBuilderAttribute("Pipeline")
+        private String pipeline = getProperty("OPENSEARCH_PIPELINE", null);
+
+        @PluginBuilderAttribute("DataStream")
+        private boolean dataStream = false;
+
+        @PluginBuilderAttribute("SniffInterval")
+        private long sniffInterval = 0;
+
+        @PluginBuilderAttribute("NodeSelection")
+        private NodeSelection nodeSelection = NodeSelection.SKIP_DEDICATED_CLUSTER_MANAGERS;
+
+        @PluginBuilderAttribute("MaxConnections")
+        private int maxConnections = 30;
+
+        @PluginBuilderAttribute("MaxConnectionsPerRoute")
+        private int maxConnectionsPerRoute = 10;
+
+        @PluginBuilderAttribute("ConnectionTimeToLive")
+        private long connectionTimeToLive = 0;
+
+        @PluginBuilderAttribute("ConnectionIdleTimeout")
+        private long connectionIdleTimeout = 30_000;
+
+        @PluginBuilderAttribute("IoThreads")
+        private int ioThreads = 0;
+
+        @PluginBuilderAttribute("ConnectTimeout")
+        private long connectTimeout = 1_000;
+
+        @PluginBuilderAttribute("ResponseTimeout")
+        private long responseTimeout = 30_000;
+
         @PluginBuilderAttribute("FlushThreshold")
         private long flushThreshold = 100;
 
         @PluginBuilderAttribute("FlushInterval")
         private long flushInterval = 5_000;
 
+        @PluginBuilderAttribute("FlushBytes")
+        private long flushBytes = 5L * 1024 * 1024;
+
+        @PluginBuilderAttribute("AdaptiveBatching")
+        private boolean adaptiveBatching = false;
+
+        @PluginBuilderAttribute("AdaptiveTargetLatency")
+        private long adaptiveTargetLatency = 200;
+
+        @PluginBuilderAttribute("AdaptiveMinThreshold")
+        private int adaptiveMinThreshold = 10;
+
+        @PluginBuilderAttribute("AdaptiveMaxThreshold")
+        private int adaptiveMaxThreshold = 10_000;
+
+        @PluginBuilderAttribute("StreamingBulk")
+        private boolean streamingBulk = false;
+
+        @PluginBuilderAttribute("RingBufferSize")
+        private int ringBufferSize = 0;
+
+        @PluginBuilderAttribute("WaitStrategy")
+        private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+
+        @PluginBuilderAttribute("MaxPendingEvents")
+        private long maxPendingEvents = 0;
+
+        @PluginBuilderAttribute("MaxPendingBytes")
+        private long maxPendingBytes = 0;
+
+        @PluginBuilderAttribute("OverflowPolicy")
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+        @PluginBuilderAttribute("OverflowTimeout")
+        private long overflowTimeout = 1_000;
+
+        @PluginBuilderAttribute("OverflowLevel")
+        private Level overflowLevel = Level.ERROR;
+
+        @PluginBuilderAttribute("SpoolDirectory")
+        private String spoolDirectory = getProperty("OPENSEARCH_SPOOL_DIRECTORY", null);
+
+        @PluginBuilderAttribute("SpoolMaxSize")
+        private long spoolMaxSize = 256L * 1024 * 1024;
+
+        @PluginBuilderAttribute("SpoolSegmentSize")
+        private int spoolSegmentSize = 16 * 1024 * 1024;
+
+        @PluginBuilderAttribute("MaxRetries")
+        private int maxRetries = 3;
+
+        @PluginBuilderAttribute("RetryInitialDelay")
+        private long retryInitialDelay = 100;
+
+        @PluginBuilderAttribute("RetryMaxDelay")
+        private long retryMaxDelay = 5_000;
+
+        @PluginBuilderAttribute("MaxInFlightBulks")
+        private int maxInFlightBulks = 1;
+
+        @PluginBuilderAttribute("Compression")
+        private Compression compression = Compression.NONE;
+
+        @PluginBuilderAttribute("CompressionLevel")
+        private int compressionLevel = 1;
+
+        @PluginBuilderAttribute("DeadLetterHandler")
+        private String deadLetterHandler = LoggingDeadLetterHandler.class.getName();
+
+        @PluginBuilderAttribute("JmxMetrics")
+        private boolean jmxMetrics = true;
+
+        @PluginBuilderAttribute("MicrometerMetrics")
+        private boolean micrometerMetrics = false;
+
+        @PluginBuilderAttribute("VirtualThreads")
+        private boolean virtualThreads = false;
+
+        @PluginBuilderAttribute("VirtualThreadConcurrency")
+        private int virtualThreadConcurrency = 0;
+
+        @PluginBuilderAttribute("SharedDelivery")
+        private boolean sharedDelivery = false;
+
+        @PluginBuilderAttribute("DeduplicationWindow")
+        private long deduplicationWindow = 0;
+
+        @PluginBuilderAttribute("RateLimits")
+        private String rateLimits = getProperty("OPENSEARCH_RATE_LIMITS", null);
+
+        @PluginBuilderAttribute("ContextKeys")
+        private String contextKeys = getProperty("OPENSEARCH_CONTEXT_KEYS", null);
+
+        @PluginBuilderAttribute("StackTraceCacheSize")
+        private int stackTraceCacheSize = 256;
+
+        @PluginBuilderAttribute("StackTraceMaxDepth")
+        private int stackTraceMaxDepth = 0;
+
+        @PluginBuilderAttribute("StackTraceHash")
+        private boolean stackTraceHash = false;
+
+        @PluginBuilderAttribute("ShutdownTimeout")
+        private long shutdownTimeout = 10_000;
+
         @Override
         public OpensearchAppender build() {
             OpensearchConfiguration configuration = new OpensearchConfiguration();
@@ -116,13 +496,60 @@ public class OpensearchAppender extends AbstractLogDeliveryAppender<OpensearchCo
             configuration.setConverter(getConverter());
             configuration.setIndex(getIndex());
             configuration.setIndexSuffix(getIndexSuffix());
+            configuration.setIndexByEventTime(isIndexByEventTime());
             configuration.setUrl(getUrl());
             configuration.setUrlTrusted(isUrlTrusted());
             configuration.setUser(getUser());
             configuration.setPassword(getPassword());
             configuration.setApiKey(getApiKey());
+            configuration.setPipeline(getPipeline());
+            configuration.setDataStream(isDataStream());
+            configuration.setSniffInterval(Duration.ofMillis(getSniffInterval()));
+            configuration.setNodeSelection(getNodeSelection());
+            configuration.setMaxConnections(getMaxConnections());
+            configuration.setMaxConnectionsPerRoute(getMaxConnectionsPerRoute());
+            configuration.setConnectionTimeToLive(Duration.ofMillis(getConnectionTimeToLive()));
+            configuration.setConnectionIdleTimeout(Duration.ofMillis(getConnectionIdleTimeout()));
+            configuration.setIoThreads(getIoThreads());
+            configuration.setConnectTimeout(Duration.ofMillis(getConnectTimeout()));
+            configuration.setResponseTimeout(Duration.ofMillis(getResponseTimeout()));
             configuration.setFlushThreshold(getFlushThreshold());
             configuration.setFlushInterval(Duration.ofMillis(getFlushInterval()));
+            configuration.setFlushBytes(getFlushBytes());
+            configuration.setAdaptiveBatching(isAdaptiveBatching());
+            configuration.setAdaptiveTargetLatency(Duration.ofMillis(getAdaptiveTargetLatency()));
+            configuration.setAdaptiveMinThreshold(getAdaptiveMinThreshold());
+            configuration.setAdaptiveMaxThreshold(getAdaptiveMaxThreshold());
+            configuration.setStreamingBulk(isStreamingBulk());
+            configuration.setRingBufferSize(getRingBufferSize());
+            configuration.setWaitStrategy(getWaitStrategy());
+            configuration.setMaxPendingEvents(getMaxPendingEvents());
+            configuration.setMaxPendingBytes(getMaxPendingBytes());
+            configuration.setOverflowPolicy(getOverflowPolicy());
+            configuration.setOverflowTimeout(Duration.ofMillis(getOverflowTimeout()));
+            configuration.setOverflowLevel(getOverflowLevel());
+            configuration.setSpoolDirectory(getSpoolDirectory());
+            configuration.setSpoolMaxSize(getSpoolMaxSize());
+            configuration.setSpoolSegmentSize(getSpoolSegmentSize());
+            configuration.setMaxRetries(getMaxRetries());
+            configuration.setRetryInitialDelay(Duration.ofMillis(getRetryInitialDelay()));
+            configuration.setRetryMaxDelay(Duration.ofMillis(getRetryMaxDelay()));
+            configuration.setMaxInFlightBulks(getMaxInFlightBulks());
+            configuration.setCompression(getCompression());
+            configuration.setCompressionLevel(getCompressionLevel());
+            configuration.setDeadLetterHandler(getDeadLetterHandler());
+            configuration.setJmxMetrics(isJmxMetrics());
+            configuration.setMicrometerMetrics(isMicrometerMetrics());
+            configuration.setVirtualThreads(isVirtualThreads());
+            configuration.setVirtualThreadConcurrency(getVirtualThreadConcurrency());
+            configuration.setSharedDelivery(isSharedDelivery());
+            configuration.setDeduplicationWindow(Duration.ofMillis(getDeduplicationWindow()));
+            configuration.setRateLimits(getRateLimits());
+            configuration.setContextKeys(getContextKeys());
+            configuration.setStackTraceCacheSize(getStackTraceCacheSize());
+            configuration.setStackTraceMaxDepth(getStackTraceMaxDepth());
+            configuration.setStackTraceHash(isStackTraceHash());
+            configuration.setShutdownTimeout(Duration.ofMillis(getShutdownTimeout()));
             return new OpensearchAppender(getName(), getFilter(), getLayout(), configuration);
         }
 
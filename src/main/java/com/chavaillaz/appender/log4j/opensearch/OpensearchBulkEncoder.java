@@ -0,0 +1,206 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.core.LogEvent;
+
+/**
+ * Encoder writing bulk operations directly in NDJSON format into a {@link BulkBuffer},
+ * using a streaming generator instead of building and serializing typed bulk operations.
+ * <p>
+ * The action line of the last index used is kept already serialized, since the documents of consecutive events
+ * are almost always stored in the same index, so that it is only copied for each document.
+ * <p>
+ * When created with a {@link DocumentIdGenerator}, documents are written with create operations instead of index
+ * operations (as required by data streams), each with an identifier generated on the client side and written
+ * after the serialized beginning of the action line.
+ */
+public class OpensearchBulkEncoder {
+
+    private static final SerializableString INDEX = new SerializedString("index");
+    private static final SerializableString CREATE = new SerializedString("create");
+    private static final SerializableString INDEX_NAME = new SerializedString("_index");
+    private static final String ID_START = ",\"_id\":\"";
+    private static final SerializableString ID_END = new SerializedString("\"}}\n");
+
+    private final JsonFactory factory;
+    private final DocumentIdGenerator idGenerator;
+    private volatile IndexAction lastAction;
+
+    /**
+     * Creates a new bulk encoder writing index operations.
+     *
+     * @param mapper The mapper used to serialize values not natively supported by the generator
+     */
+    public OpensearchBulkEncoder(ObjectMapper mapper) {
+        this(mapper, null);
+    }
+
+    /**
+     * Creates a new bulk encoder.
+     *
+     * @param mapper      The mapper used to serialize values not natively supported by the generator
+     * @param idGenerator The generator of document identifiers to write create operations
+     *                    or {@code null} to write index operations with identifiers assigned by the server
+     */
+    public OpensearchBulkEncoder(ObjectMapper mapper, DocumentIdGenerator idGenerator) {
+        this.factory = mapper.getFactory();
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Gets the generator writing into the given buffer, creating it if necessary.
+     *
+     * @param buffer The buffer in which to write
+     * @return The generator writing into the buffer
+     * @throws IOException If the generator cannot be created
+     */
+    public JsonGenerator getGenerator(BulkBuffer buffer) throws IOException {
+        JsonGenerator generator = buffer.getGenerator();
+        if (generator == null) {
+            generator = factory.createGenerator(buffer);
+            generator.setRootValueSeparator(null);
+            buffer.setGenerator(generator);
+        }
+        return generator;
+    }
+
+    /**
+     * Writes an index operation and its document into the given buffer.
+     *
+     * @param buffer   The buffer in which to write
+     * @param index    The name of the index in which to store the document
+     * @param document The document to store
+     * @throws IOException If the document cannot be written
+     */
+    public void writeIndexOperation(BulkBuffer buffer, String index, Map<String, Object> document) throws IOException {
+        JsonGenerator generator = getGenerator(buffer);
+        buffer.startDocument();
+        try {
+            writeAction(generator, index);
+            writeDocument(generator, document);
+            generator.flush();
+        } catch (IOException | RuntimeException e) {
+            buffer.discardLastDocument();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes an index operation and the document corresponding to the given logging event into the given buffer.
+     *
+     * @param buffer    The buffer in which to write
+     * @param index     The name of the index in which to store the document
+     * @param event     The logging event to write
+     * @param converter The converter writing the document of the event
+     * @throws IOException If the document cannot be written
+     */
+    public void writeIndexOperation(BulkBuffer buffer, String index, LogEvent event, StreamingLogConverter converter) throws IOException {
+        JsonGenerator generator = getGenerator(buffer);
+        buffer.startDocument();
+        try {
+            writeAction(generator, index);
+            converter.write(event, generator);
+            generator.writeRaw('\n');
+            generator.flush();
+        } catch (IOException | RuntimeException e) {
+            buffer.discardLastDocument();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the action line of an index operation, or of a create operation with a new identifier
+     * if the encoder has a generator of document identifiers.
+     *
+     * @param generator The generator to use
+     * @param index     The name of the index in which to store the document
+     * @throws IOException If the action cannot be written
+     */
+    protected void writeAction(JsonGenerator generator, String index) throws IOException {
+        IndexAction action = lastAction;
+        if (action == null || !action.index().equals(index)) {
+            action = new IndexAction(index, serializeAction(index));
+            lastAction = action;
+        }
+        generator.writeRaw(action.line());
+        if (idGenerator != null) {
+            idGenerator.write(generator);
+            generator.writeRaw(ID_END);
+        }
+    }
+
+    /**
+     * Serializes the action line for the given index, or only its beginning up to the value
+     * of the identifier if the encoder writes create operations.
+     */
+    private SerializableString serializeAction(String index) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = factory.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeFieldName(idGenerator != null ? CREATE : INDEX);
+            generator.writeStartObject();
+            generator.writeFieldName(INDEX_NAME);
+            generator.writeString(index);
+            if (idGenerator != null) {
+                generator.flush();
+                return new SerializedString(writer.append(ID_START).toString());
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return new SerializedString(writer.append('\n').toString());
+    }
+
+    /**
+     * Writes the source line of a document.
+     *
+     * @param generator The generator to use
+     * @param document  The document to write
+     * @throws IOException If the document cannot be written
+     */
+    protected void writeDocument(JsonGenerator generator, Map<String, Object> document) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            writeValue(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Writes a value using the native methods of the generator for the most common types,
+     * falling back on the mapper for the other ones.
+     *
+     * @param generator The generator to use
+     * @param value     The value to write
+     * @throws IOException If the value cannot be written
+     */
+    protected void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String text) {
+            generator.writeString(text);
+        } else if (value instanceof Integer number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Long number) {
+            generator.writeNumber(number);
+        } else if (value instanceof Boolean bool) {
+            generator.writeBoolean(bool);
+        } else {
+            generator.writeObject(value);
+        }
+    }
+
+    private record IndexAction(String index, SerializableString line) {
+    }
+
+}
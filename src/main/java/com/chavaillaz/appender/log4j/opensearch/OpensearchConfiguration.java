@@ -5,14 +5,21 @@ import static org.apache.commons.lang3.StringUtils.EMPTY;
 import java.lang.reflect.Constructor;
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import com.chavaillaz.appender.LogConfiguration;
 import com.chavaillaz.appender.log4j.DefaultLogConverter;
 import com.chavaillaz.appender.log4j.LogConverter;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.logging.log4j.Level;
 
 /**
  * Configuration for logs transmissions using OpenSearch.
@@ -27,13 +34,63 @@ public class OpensearchConfiguration implements LogConfiguration {
     private LogConverter converter;
     private String index;
     private DateTimeFormatter indexSuffix;
+    private boolean indexByEventTime;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile IndexNameResolver indexNameResolver;
     private String url;
     private boolean urlTrusted;
     private String user;
     private String password;
     private String apiKey;
-    private long flushThreshold;
-    private Duration flushInterval;
+    private String pipeline;
+    private Duration sniffInterval = Duration.ZERO;
+    private NodeSelection nodeSelection = NodeSelection.SKIP_DEDICATED_CLUSTER_MANAGERS;
+    private int maxConnections = 30;
+    private int maxConnectionsPerRoute = 10;
+    private Duration connectionTimeToLive = Duration.ZERO;
+    private Duration connectionIdleTimeout = Duration.ofSeconds(30);
+    private int ioThreads;
+    private Duration connectTimeout = Duration.ofSeconds(1);
+    private Duration responseTimeout = Duration.ofSeconds(30);
+    private long flushThreshold = 100;
+    private Duration flushInterval = Duration.ofSeconds(5);
+    private long flushBytes = 5L * 1024 * 1024;
+    private boolean adaptiveBatching;
+    private Duration adaptiveTargetLatency = Duration.ofMillis(200);
+    private int adaptiveMinThreshold = 10;
+    private int adaptiveMaxThreshold = 10_000;
+    private boolean streamingBulk;
+    private int ringBufferSize;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    private long maxPendingEvents;
+    private long maxPendingBytes;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private Duration overflowTimeout = Duration.ofSeconds(1);
+    private Level overflowLevel = Level.ERROR;
+    private String spoolDirectory;
+    private long spoolMaxSize = 256L * 1024 * 1024;
+    private int spoolSegmentSize = 16 * 1024 * 1024;
+    private int maxRetries = 3;
+    private Duration retryInitialDelay = Duration.ofMillis(100);
+    private Duration retryMaxDelay = Duration.ofSeconds(5);
+    private int maxInFlightBulks = 1;
+    private Compression compression = Compression.NONE;
+    private int compressionLevel = 1;
+    private DeadLetterHandler deadLetterHandler = new LoggingDeadLetterHandler();
+    private boolean jmxMetrics = true;
+    private boolean micrometerMetrics;
+    private boolean virtualThreads;
+    private int virtualThreadConcurrency;
+    private boolean sharedDelivery;
+    private Duration deduplicationWindow = Duration.ZERO;
+    private Map<Level, Long> rateLimits = Map.of();
+    private int stackTraceCacheSize = 256;
+    private int stackTraceMaxDepth;
+    private boolean stackTraceHash;
+    private Duration shutdownTimeout = Duration.ofSeconds(10);
+    private boolean dataStream;
+    private List<String> contextKeys = List.of();
 
     /**
      * Sets the logs converter by instantiating the given class name.
@@ -52,6 +109,91 @@ public class OpensearchConfiguration implements LogConfiguration {
         this.converter.configure(this);
     }
 
+    /**
+     * Sets the handler of the documents refused by instantiating the given class name.
+     * Note that it must have an empty constructor.
+     *
+     * @param className The class name of the dead-letter handler
+     */
+    public void setDeadLetterHandler(String className) {
+        try {
+            Class<?> clazz = Class.forName(className);
+            Constructor<?> constructor = clazz.getConstructor();
+            this.deadLetterHandler = (DeadLetterHandler) constructor.newInstance();
+        } catch (Exception e) {
+            this.deadLetterHandler = new LoggingDeadLetterHandler();
+        }
+        this.deadLetterHandler.configure(this);
+    }
+
+    /**
+     * Sets the maximum number of events per second for each level, in the format {@code LEVEL=rate}
+     * separated by commas (for instance {@code INFO=1000,ERROR=100}). The levels not listed are not limited,
+     * and the entries with an unknown level or an invalid rate are ignored.
+     *
+     * @param rateLimits The rate limits per level
+     */
+    public void setRateLimits(String rateLimits) {
+        Map<Level, Long> limits = new HashMap<>();
+        for (String entry : Optional.ofNullable(rateLimits).orElse(EMPTY).split(",")) {
+            String[] parts = entry.split("=");
+            Level level = parts.length == 2 ? Level.getLevel(parts[0].trim().toUpperCase()) : null;
+            try {
+                long rate = level == null ? 0 : Long.parseLong(parts[1].trim());
+                if (rate > 0) {
+                    limits.put(level, rate);
+                }
+            } catch (NumberFormatException e) {
+                // Invalid rate ignored
+            }
+        }
+        this.rateLimits = Map.copyOf(limits);
+    }
+
+    /**
+     * Sets the keys of the context data (MDC) to add to the documents, separated by commas, each key ending
+     * with {@code *} matching all the keys starting with it (for instance {@code requestId,user.*}).
+     * All the keys are added if none is given.
+     *
+     * @param contextKeys The keys of the context data to add
+     */
+    public void setContextKeys(String contextKeys) {
+        this.contextKeys = Arrays.stream(Optional.ofNullable(contextKeys).orElse(EMPTY).split(","))
+                .map(String::trim)
+                .filter(key -> !key.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Indicates if the documents must be encoded directly in NDJSON into reusable buffers,
+     * which is always the case when they are sent to a data stream.
+     *
+     * @return {@code true} if {@code StreamingBulk} or {@code DataStream} is enabled, {@code false} otherwise
+     */
+    public boolean isStreamingBulk() {
+        return streamingBulk || dataStream;
+    }
+
+    /**
+     * Indicates if the given key of the context data (MDC) must be added to the documents.
+     * The number of occurrences added to the events collapsed by deduplication is always included.
+     *
+     * @param key The key of the context data
+     * @return {@code true} if no keys are configured or if the key matches one of them
+     * or is {@link EventSampler#OCCURRENCES_KEY}, {@code false} otherwise
+     */
+    public boolean isContextKeyIncluded(String key) {
+        if (contextKeys.isEmpty() || EventSampler.OCCURRENCES_KEY.equals(key)) {
+            return true;
+        }
+        for (String included : contextKeys) {
+            if (included.endsWith("*") ? key.startsWith(included.substring(0, included.length() - 1)) : key.equals(included)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Sets the date suffix to use when generating the index to which send the documents.
      * Note that it has to follow a pattern recognized by {@link DateTimeFormatter}.
@@ -60,6 +202,17 @@ public class OpensearchConfiguration implements LogConfiguration {
      */
     public void setIndexSuffix(String indexSuffix) {
         this.indexSuffix = DateTimeFormatter.ofPattern(Optional.ofNullable(indexSuffix).orElse(EMPTY));
+        this.indexNameResolver = null;
+    }
+
+    /**
+     * Sets the name of the index to which send the documents.
+     *
+     * @param index The index name
+     */
+    public void setIndex(String index) {
+        this.index = index;
+        this.indexNameResolver = null;
     }
 
     /**
@@ -89,4 +242,20 @@ public class OpensearchConfiguration implements LogConfiguration {
         }
     }
 
+    /**
+     * Generates the index name using the suffix if present, reusing the last name generated
+     * as long as the given time stays in the same suffix period.
+     *
+     * @param timestamp The time of the event in milliseconds since the epoch
+     * @return The computed index name
+     */
+    public String generateIndexName(long timestamp) {
+        IndexNameResolver resolver = indexNameResolver;
+        if (resolver == null) {
+            resolver = new IndexNameResolver(getIndex(), getIndexSuffix(), ZoneId.systemDefault());
+            indexNameResolver = resolver;
+        }
+        return resolver.resolve(timestamp);
+    }
+
 }
@@ -1,16 +1,59 @@
 package com.chavaillaz.appender.log4j.opensearch;
 
 import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.createClient;
-import static java.time.OffsetDateTime.now;
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.createThreadFactory;
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ObjIntConsumer;
 
 import com.chavaillaz.appender.log4j.AbstractBatchLogDelivery;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.util.Constants;
+import org.opensearch.client.opensearch.OpenSearchAsyncClient;
 import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch._types.OpenSearchException;
 import org.opensearch.client.opensearch.core.BulkRequest;
 import org.opensearch.client.opensearch.core.BulkResponse;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+import org.opensearch.client.opensearch.generic.Bodies;
+import org.opensearch.client.opensearch.generic.Body;
+import org.opensearch.client.opensearch.generic.OpenSearchGenericClient;
+import org.opensearch.client.opensearch.generic.Request;
+import org.opensearch.client.opensearch.generic.Requests;
+import org.opensearch.client.opensearch.generic.Response;
+import org.opensearch.client.transport.TransportOptions;
 
 /**
  * Implementation of logs transmission for OpenSearch.
@@ -18,7 +61,46 @@ import org.opensearch.client.opensearch.core.BulkResponse;
 @Log4j2
 public class OpensearchLogDelivery extends AbstractBatchLogDelivery<OpensearchConfiguration> {
 
+    private static final String DATETIME_FIELD = "datetime";
+    private static final String BULK_CONTENT_TYPE = "application/x-ndjson";
+    private static final int BUFFER_INITIAL_CAPACITY = 64 * 1024;
+    private static final int BUFFER_MAX_RETAINED_CAPACITY = 16 * 1024 * 1024;
+    private static final int EVENT_BUFFER_INITIAL_CAPACITY = 1024;
+    private static final int DRAIN_MAX_BULK_SIZE = 10 * 1024 * 1024;
+    private static final int DRAIN_CONCURRENCY = 4;
+
     private final OpenSearchClient client;
+    private final OpenSearchGenericClient genericClient;
+    private final ObjectMapper objectMapper;
+    private final AtomicBoolean invalidTimeWarned = new AtomicBoolean();
+    private final OpensearchBulkEncoder encoder;
+    private final BulkBufferPool bufferPool;
+    private final ThreadLocal<BulkBuffer> eventBuffers;
+    private final ExecutorService flushExecutor;
+    private final Deque<BulkBuffer> readyBulks = new ArrayDeque<>();
+    @Getter
+    private final PendingBudget pendingBudget;
+    private final BulkSpool spool;
+    private final ScheduledExecutorService spoolReplayer;
+    private final Object shutdownSpoolLock = new Object();
+    private BulkSpool shutdownSpool;
+    /**
+     * Directory of the spool created when closing for the documents not delivered, if no spool is configured.
+     */
+    @Getter
+    private volatile Path shutdownSpoolDirectory;
+    private final OpenSearchAsyncClient asyncClient;
+    private final Semaphore inFlight;
+    private final ExecutorService retryExecutor;
+    private final BulkCompressor compressor;
+    private final Map<String, String> bulkParameters;
+    private final AdaptiveBatchSize batchSize;
+    @Getter
+    private final DeliveryMetrics metrics;
+    private BulkBuffer pendingBulk;
+    private volatile boolean closing;
+    private volatile long shutdownDeadline;
+    private volatile boolean abandonedRequests;
 
     /**
      * Creates a new logs delivery handler for OpenSearch.
@@ -38,36 +120,1495 @@ public class OpensearchLogDelivery extends AbstractBatchLogDelivery<OpensearchCo
     public OpensearchLogDelivery(OpensearchConfiguration configuration, OpenSearchClient client) {
         super(configuration);
         this.client = client;
+        this.compressor = createCompressor(configuration);
+        this.genericClient = createGenericClient(client, compressor);
+        this.bulkParameters = isBlank(configuration.getPipeline()) ? Map.of() : Map.of("pipeline", configuration.getPipeline());
+        this.objectMapper = getJsonMapper().objectMapper();
+        this.encoder = new OpensearchBulkEncoder(objectMapper,
+                configuration.isDataStream() ? new DocumentIdGenerator(configuration.getHost()) : null);
+        this.bufferPool = new BulkBufferPool(BUFFER_INITIAL_CAPACITY, BUFFER_MAX_RETAINED_CAPACITY);
+        this.eventBuffers = ThreadLocal.withInitial(() -> new BulkBuffer(EVENT_BUFFER_INITIAL_CAPACITY));
+        this.flushExecutor = Executors.newSingleThreadExecutor(createThreadFactory(configuration, "OpensearchFlush"));
+        this.pendingBudget = new PendingBudget(configuration.getMaxPendingEvents(), configuration.getMaxPendingBytes());
+        this.pendingBulk = bufferPool.acquire();
+        this.spool = createSpool(configuration);
+        this.spoolReplayer = spool == null ? null : createSpoolReplayer(configuration);
+        this.metrics = new DeliveryMetrics(pendingBudget, () -> spool == null ? 0 : spool.getSize());
+        boolean async = configuration.getMaxInFlightBulks() > 1;
+        this.asyncClient = async ? new OpenSearchAsyncClient(client._transport()) : null;
+        this.inFlight = async ? new Semaphore(configuration.getMaxInFlightBulks()) : null;
+        this.batchSize = configuration.isAdaptiveBatching() ? new AdaptiveBatchSize(
+                (int) Math.min(Integer.MAX_VALUE, configuration.getFlushThreshold()),
+                configuration.getAdaptiveMinThreshold(),
+                configuration.getAdaptiveMaxThreshold(),
+                configuration.getAdaptiveTargetLatency()) : null;
+        this.retryExecutor = async ? Executors.newSingleThreadExecutor(createThreadFactory(configuration, "OpensearchRetry")) : null;
+    }
+
+    private static BulkCompressor createCompressor(OpensearchConfiguration configuration) {
+        if (!configuration.isStreamingBulk() || configuration.getCompression() == null || configuration.getCompression() == Compression.NONE) {
+            return null;
+        }
+        return new BulkCompressor(configuration.getCompression(), configuration.getCompressionLevel());
+    }
+
+    private static OpenSearchGenericClient createGenericClient(OpenSearchClient client, BulkCompressor compressor) {
+        OpenSearchGenericClient genericClient = client.generic();
+        if (compressor == null) {
+            return genericClient;
+        }
+        TransportOptions options = Optional.ofNullable(genericClient._transportOptions()).orElse(client._transport().options());
+        return genericClient.withTransportOptions(options.with(builder -> builder
+                .addHeader("Content-Encoding", compressor.getCompression().getEncoding())));
+    }
+
+    private static BulkSpool createSpool(OpensearchConfiguration configuration) {
+        if (isBlank(configuration.getSpoolDirectory())) {
+            return null;
+        }
+        try {
+            return new BulkSpool(Path.of(configuration.getSpoolDirectory()), configuration.getSpoolMaxSize(), configuration.getSpoolSegmentSize());
+        } catch (Exception e) {
+            log.warn("Unable to open spool in {}: {}", configuration.getSpoolDirectory(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private ScheduledExecutorService createSpoolReplayer(OpensearchConfiguration configuration) {
+        long interval = configuration.getFlushInterval().toMillis();
+        ScheduledExecutorService replayer = Executors.newSingleThreadScheduledExecutor(createThreadFactory(configuration, "OpensearchSpool"));
+        replayer.scheduleWithFixedDelay(this::replaySpool, interval, interval, TimeUnit.MILLISECONDS);
+        return replayer;
+    }
+
+    /**
+     * Decides if the given logging event can be accepted according to the maximum number of pending events and bytes,
+     * storing the oldest pending bulk in the spool (if enabled) or applying the overflow policy configured otherwise
+     * when the limits are reached. Each accepted event is accounted as pending
+     * until it has been sent, and each refused event is counted as dropped.
+     *
+     * @param event The logging event to accept
+     * @return {@code true} if the event can be sent, {@code false} if it has been dropped
+     */
+    public boolean accept(LogEvent event) {
+        return accept(event, getConfiguration());
+    }
+
+    /**
+     * Decides if the given logging event can be accepted, applying the overflow policy of the given configuration.
+     *
+     * @param event  The logging event to accept
+     * @param source The configuration of the appender giving the event
+     * @return {@code true} if the event can be sent, {@code false} if it has been dropped
+     * @see #accept(LogEvent)
+     */
+    public boolean accept(LogEvent event, OpensearchConfiguration source) {
+        metrics.onAppended();
+        if (!pendingBudget.isExceeded() || (spool != null && spillOldestBulk()) || isAcceptedOnOverflow(event, source)) {
+            pendingBudget.acquire();
+            return true;
+        }
+        pendingBudget.drop(1);
+        return false;
+    }
+
+    private boolean isAcceptedOnOverflow(LogEvent event, OpensearchConfiguration source) {
+        return switch (source.getOverflowPolicy()) {
+            case BLOCK -> pendingBudget.await(source.getOverflowTimeout());
+            case DROP_OLDEST -> dropOldestPending();
+            case DROP_BELOW_LEVEL -> event.getLevel().isMoreSpecificThan(source.getOverflowLevel());
+            case DROP_NEWEST -> false;
+        };
+    }
+
+    /**
+     * Drops the oldest document encoded but not yet being sent.
+     *
+     * @return {@code true} if a document has been dropped, {@code false} if there are no such documents
+     */
+    private synchronized boolean dropOldestPending() {
+        BulkBuffer oldest = readyBulks.isEmpty() ? pendingBulk : readyBulks.peekFirst();
+        int size = oldest.dropFirstDocument();
+        if (size == 0) {
+            return false;
+        }
+        if (oldest != pendingBulk && oldest.getDocuments() == 0) {
+            bufferPool.release(readyBulks.pollFirst());
+        }
+        pendingBudget.release(1, size);
+        pendingBudget.drop(1);
+        return true;
+    }
+
+    /**
+     * Releases an event accepted but which will never be part of a bulk (for instance if it cannot be encoded).
+     */
+    public void reject() {
+        pendingBudget.release(1, 0);
+    }
+
+    /**
+     * Indicates if logging events can be encoded directly, without converting them into documents first.
+     * This is the case when streaming bulks are enabled and the converter is a {@link StreamingLogConverter}.
+     *
+     * @return {@code true} if events can be given to {@link #send(LogEvent)}, {@code false} otherwise
+     */
+    public boolean isEventEncoding() {
+        return isEventEncoding(getConfiguration());
+    }
+
+    /**
+     * Indicates if logging events can be encoded directly with the converter of the given configuration.
+     *
+     * @param source The configuration of the appender giving the events
+     * @return {@code true} if events can be given to {@link #send(LogEvent, OpensearchConfiguration)}, {@code false} otherwise
+     */
+    public boolean isEventEncoding(OpensearchConfiguration source) {
+        return getConfiguration().isStreamingBulk()
+                && source.getConverter() instanceof StreamingLogConverter;
+    }
+
+    /**
+     * Encodes the given logging event on the calling thread and adds it to the pending bulk.
+     * When the flush threshold is reached, the bulk is sent asynchronously, so that the calling thread is never
+     * blocked by the transmission. Note that the event is not retained and can therefore be reused by Log4j.
+     *
+     * @param event The logging event to send
+     */
+    public void send(LogEvent event) {
+        send(event, getConfiguration());
+    }
+
+    /**
+     * Encodes the given logging event with the converter and into the index of the given configuration,
+     * and adds it to the pending bulk.
+     *
+     * @param event  The logging event to send
+     * @param source The configuration of the appender giving the event
+     * @see #send(LogEvent)
+     */
+    public void send(LogEvent event, OpensearchConfiguration source) {
+        BulkBuffer buffer = Constants.ENABLE_THREADLOCALS ? eventBuffers.get() : bufferPool.acquire();
+        try {
+            StreamingLogConverter converter = (StreamingLogConverter) source.getConverter();
+            encoder.writeIndexOperation(buffer, getIndexName(event, source), event, converter);
+            boolean ready;
+            synchronized (this) {
+                buffer.copyTo(pendingBulk);
+                pendingBudget.addBytes(buffer.size());
+                ready = isPendingBulkFull() && readyPendingBulk();
+            }
+            if (ready) {
+                flushExecutor.execute(this::sendReadyBulks);
+            }
+        } catch (Exception e) {
+            reject();
+            log.warn("Unable to encode event: {}", e.getMessage(), e);
+        } finally {
+            if (Constants.ENABLE_THREADLOCALS) {
+                buffer.reset();
+            } else {
+                bufferPool.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the index to which send the given event, according to its time or the current time.
+     *
+     * @param event The logging event to send
+     * @return The index name
+     */
+    protected String getIndexName(LogEvent event) {
+        return getIndexName(event, getConfiguration());
+    }
+
+    private static String getIndexName(LogEvent event, OpensearchConfiguration source) {
+        if (source.isDataStream()) {
+            return source.getIndex();
+        }
+        long timestamp = source.isIndexByEventTime() ? event.getTimeMillis() : System.currentTimeMillis();
+        return source.generateIndexName(timestamp);
+    }
+
+    /**
+     * Gets the name of the index to which send the given document, according to its {@code datetime} field
+     * or the current time.
+     *
+     * @param document The document to send
+     * @return The index name
+     */
+    protected String getIndexName(Map<String, Object> document) {
+        return getIndexName(document, getConfiguration());
+    }
+
+    private String getIndexName(Map<String, Object> document, OpensearchConfiguration source) {
+        if (source.isDataStream()) {
+            return source.getIndex();
+        }
+        long timestamp = System.currentTimeMillis();
+        if (source.isIndexByEventTime()) {
+            Object datetime = document.get(DATETIME_FIELD);
+            try {
+                if (datetime instanceof TemporalAccessor temporal) {
+                    timestamp = getTimestamp(temporal);
+                } else if (datetime instanceof String text) {
+                    timestamp = getTimestamp(DateTimeFormatter.ISO_DATE_TIME.parse(text));
+                }
+            } catch (DateTimeException e) {
+                if (!invalidTimeWarned.getAndSet(true)) {
+                    log.warn("Unable to read time of document ({}), using current time for index name: {}", datetime, e.getMessage());
+                }
+            }
+        }
+        return source.generateIndexName(timestamp);
+    }
+
+    /**
+     * Gets the time of the given date and time, using the time zone of the index suffixes
+     * when it has no offset (for instance a {@link java.time.LocalDateTime} or a {@link LocalDate}).
+     *
+     * @param temporal The date and time
+     * @return The time in milliseconds since the epoch
+     * @throws DateTimeException If the given value does not contain a date
+     */
+    private static long getTimestamp(TemporalAccessor temporal) {
+        if (temporal.isSupported(ChronoField.INSTANT_SECONDS)) {
+            return Instant.from(temporal).toEpochMilli();
+        }
+        LocalDate date = LocalDate.from(temporal);
+        LocalTime time = temporal.query(TemporalQueries.localTime());
+        return (time != null ? date.atTime(time) : date.atStartOfDay())
+                .atZone(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
     }
 
     @Override
-    protected boolean sendBulk(List<Map<String, Object>> documents) {
+    public void send(Map<String, Object> document) {
+        send(document, getConfiguration());
+    }
+
+    /**
+     * Adds the given document to the pending bulk, into the index of the given configuration.
+     * Note that the index of the given configuration is only used with streaming bulks.
+     *
+     * @param document The document to send
+     * @param source   The configuration of the appender giving the document
+     */
+    public void send(Map<String, Object> document, OpensearchConfiguration source) {
+        if (!getConfiguration().isStreamingBulk()) {
+            super.send(document);
+            return;
+        }
+
+        if (encodeDocument(document, source)) {
+            sendReadyBulks();
+        }
+    }
+
+    @Override
+    public void send(List<Map<String, Object>> documents) {
+        send(documents, getConfiguration());
+    }
+
+    /**
+     * Adds the given documents to the pending bulk, into the index of the given configuration.
+     * Note that the index of the given configuration is only used with streaming bulks.
+     *
+     * @param documents The documents to send
+     * @param source    The configuration of the appender giving the documents
+     */
+    public void send(List<Map<String, Object>> documents, OpensearchConfiguration source) {
+        if (!getConfiguration().isStreamingBulk()) {
+            super.send(documents);
+            return;
+        }
+
+        boolean ready = false;
+        for (Map<String, Object> document : documents) {
+            ready |= encodeDocument(document, source);
+        }
+        if (ready) {
+            sendReadyBulks();
+        }
+    }
+
+    /**
+     * Encodes the given document into the pending bulk. The bulks are sent by the caller without holding
+     * the lock of this instance, so that a virtual thread waiting for the response does not pin its carrier thread.
+     *
+     * @param document The document to encode
+     * @param source   The configuration of the appender giving the document
+     * @return {@code true} if the pending bulk is ready to be sent, {@code false} otherwise
+     */
+    private synchronized boolean encodeDocument(Map<String, Object> document, OpensearchConfiguration source) {
         try {
-            BulkRequest.Builder builder = new BulkRequest.Builder();
-            for (Map<String, Object> document : documents) {
-                builder.operations(operation -> operation
-                        .index(index -> index
-                                .index(getConfiguration().generateIndexName(now()))
-                                .document(document)));
+            int size = pendingBulk.size();
+            encoder.writeIndexOperation(pendingBulk, getIndexName(document, source), document);
+            pendingBudget.addBytes(pendingBulk.size() - size);
+        } catch (Exception e) {
+            reject();
+            log.warn("Unable to encode document: {}", e.getMessage(), e);
+        }
+        return isPendingBulkFull() && readyPendingBulk();
+    }
+
+    @Override
+    public void flush() {
+        super.flush();
+        synchronized (this) {
+            readyPendingBulk();
+        }
+        if (closing) {
+            drainReadyBulks();
+        } else {
+            sendReadyBulks();
+        }
+    }
+
+    /**
+     * Indicates if the pending bulk reached the number of documents (fixed or adaptive) or the size to be sent.
+     * Note that it must be called while holding the lock of this instance.
+     *
+     * @return {@code true} if the pending bulk must be sent, {@code false} otherwise
+     */
+    private boolean isPendingBulkFull() {
+        long threshold = batchSize != null ? batchSize.getSize() : getConfiguration().getFlushThreshold();
+        long flushBytes = getConfiguration().getFlushBytes();
+        return pendingBulk.getDocuments() >= threshold
+                || (flushBytes > 0 && pendingBulk.getContentLength() >= flushBytes);
+    }
+
+    /**
+     * Moves the pending bulk, if not empty, to the queue of bulks ready to be sent, and replaces it by a new one.
+     * Note that it must be called while holding the lock of this instance.
+     *
+     * @return {@code true} if the pending bulk has been moved, {@code false} if it was empty
+     */
+    private boolean readyPendingBulk() {
+        if (pendingBulk.getDocuments() == 0) {
+            return false;
+        }
+        readyBulks.offerLast(pendingBulk);
+        pendingBulk = bufferPool.acquire();
+        return true;
+    }
+
+    /**
+     * Sends the bulks ready to be sent, in order, and gives them back to the pool of buffers.
+     * The bulks that cannot be delivered are stored in the spool (if enabled) or given to the dead-letter handler.
+     */
+    private void sendReadyBulks() {
+        BulkBuffer bulk;
+        while ((bulk = pollReadyBulk()) != null) {
+            EncodedBatch batch = new EncodedBatch(bulk);
+            if (inFlight != null) {
+                sendBatchAsync(batch);
+                continue;
             }
+            try {
+                sendBatch(batch, null, 0);
+            } catch (Exception e) {
+                batch.failed(e);
+            } finally {
+                batch.complete();
+            }
+        }
+    }
+
+    /**
+     * Sends the given batch asynchronously, once less than the maximum number of bulks are in flight.
+     * Responses without errors are handled directly on the I/O thread of the client,
+     * whereas batches needing retries are handed over to the retry thread.
+     *
+     * @param batch The documents to send, completed once delivered, stored or dead-lettered
+     * @return {@code true} if the bulk has been sent, {@code false} otherwise
+     */
+    private boolean sendBatchAsync(Batch batch) {
+        inFlight.acquireUninterruptibly();
+        try {
+            batch.executeAsync().whenComplete((response, error) -> {
+                if (error == null && !response.errors()) {
+                    onSuccess(response, batch.getDocuments());
+                    completeAsyncBatch(batch);
+                } else {
+                    retryBatchAsync(batch, response, error);
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            batch.failed(e);
+            completeAsyncBatch(batch);
+            return false;
+        }
+    }
+
+    /**
+     * Hands over the retries of a batch sent asynchronously to the retry thread. When the retry thread has already
+     * been stopped, which happens once the shutdown deadline has passed, the response is handled directly without
+     * any retry, so that the documents are still stored in the spool or given to the dead-letter handler.
+     *
+     * @param batch    The documents sent
+     * @param response The response received or {@code null} if the bulk could not be sent
+     * @param error    The error that occurred or {@code null} if a response has been received
+     */
+    private void retryBatchAsync(Batch batch, BulkResponse response, Throwable error) {
+        try {
+            retryExecutor.execute(() -> resumeBatch(batch, response, error));
+        } catch (RejectedExecutionException e) {
+            completeWithoutRetry(batch, response, error);
+            completeAsyncBatch(batch);
+        }
+    }
 
-            BulkResponse response = client.bulk(builder.build());
-            if (!response.errors()) {
-                log.debug("Bulk of {} documents sent successfully in {}ms", documents.size(), response.took());
-                return true;
+    /**
+     * Handles the retries of a batch sent asynchronously, from the retry thread.
+     *
+     * @param batch    The documents sent
+     * @param response The response received or {@code null} if the bulk could not be sent
+     * @param error    The error that occurred or {@code null} if a response has been received
+     */
+    private void resumeBatch(Batch batch, BulkResponse response, Throwable error) {
+        try {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null) {
+                sendBatch(batch, response, 0);
+            } else if (isTransient(cause) && awaitRetry(0)) {
+                sendBatch(batch, null, 1);
+            } else {
+                batch.failed(cause);
             }
         } catch (Exception e) {
-            log.warn("Unable to send bulk of {} documents: {}", documents.size(), e.getMessage(), e);
+            batch.failed(e);
+        } finally {
+            completeAsyncBatch(batch);
+        }
+    }
+
+    private void completeAsyncBatch(Batch batch) {
+        batch.complete();
+        inFlight.release();
+    }
+
+    /**
+     * Stores the oldest bulk ready to be sent (or the pending one if there are none) into the spool,
+     * in order to free memory when the maximum number of pending events or bytes is reached.
+     *
+     * @return {@code true} if a bulk has been stored in the spool, {@code false} otherwise
+     */
+    private boolean spillOldestBulk() {
+        BulkBuffer bulk;
+        synchronized (this) {
+            if (readyBulks.isEmpty()) {
+                readyPendingBulk();
+            }
+            bulk = readyBulks.pollFirst();
+        }
+        if (bulk == null) {
+            return false;
+        }
+        if (!appendToSpool(bulk)) {
+            synchronized (this) {
+                readyBulks.offerFirst(bulk);
+            }
+            return false;
+        }
+        pendingBudget.release(bulk.getDocuments(), bulk.getContentLength());
+        bufferPool.release(bulk);
+        return true;
+    }
+
+    private boolean appendToSpool(BulkBuffer bulk) {
+        if (spool != null && spool.append(bulk)) {
+            metrics.onSpooled(bulk.getDocuments());
+            return true;
         }
         return false;
     }
 
+    /**
+     * Sends the bulks stored in the spool, in order, until the spool is empty or a bulk cannot be delivered
+     * because of a transient failure. The bulks refused with a permanent status are given to the dead-letter handler.
+     */
+    private void replaySpool() {
+        BulkBuffer bulk = bufferPool.acquire();
+        try {
+            while (spool.peek(bulk)) {
+                try {
+                    sendEncodedBulk(bulk);
+                } catch (IOException e) {
+                    if (isTransient(e)) {
+                        throw e;
+                    }
+                    log.warn("Bulk of {} documents from spool refused: {}", bulk.getDocuments(), e.getMessage(), e);
+                    deadLetter(bulk);
+                }
+                spool.commit();
+            }
+        } catch (Exception e) {
+            log.debug("Unable to replay spool: {}", e.getMessage());
+        } finally {
+            bufferPool.release(bulk);
+        }
+    }
+
+    private synchronized BulkBuffer pollReadyBulk() {
+        return readyBulks.pollFirst();
+    }
+
+    @Override
+    protected boolean sendBulk(List<Map<String, Object>> documents) {
+        if (inFlight != null) {
+            return sendBatchAsync(new TypedBatch(new ArrayList<>(documents)));
+        }
+        try {
+            return sendTypedBulk(documents);
+        } finally {
+            pendingBudget.release(documents.size(), 0);
+        }
+    }
+
+    /**
+     * Sends the given documents with a typed bulk request, retrying the whole request when it fails with a transient
+     * error and the documents refused with a retryable status. The documents permanently refused are given to the
+     * dead-letter handler.
+     *
+     * @param documents The documents to send
+     * @return {@code true} if all the documents have been sent successfully, {@code false} otherwise
+     */
+    protected boolean sendTypedBulk(List<Map<String, Object>> documents) {
+        TypedBatch batch = new TypedBatch(documents);
+        try {
+            return sendBatch(batch, null, 0);
+        } catch (Exception e) {
+            batch.failed(e);
+            return false;
+        }
+    }
+
+    /**
+     * Sends the given documents with a typed bulk request.
+     *
+     * @param documents The documents to send
+     * @return The response of the bulk request
+     * @throws IOException If the bulk cannot be delivered
+     */
+    private BulkResponse executeTypedBulk(List<Map<String, Object>> documents) throws IOException {
+        BulkRequest request = createTypedBulk(documents);
+        long start = metrics.onBulkStarted();
+        try {
+            BulkResponse response = client.bulk(request);
+            metrics.onBulkResponse(start, 0, true);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            metrics.onBulkFailed();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends asynchronously the given documents with a typed bulk request.
+     *
+     * @param documents The documents to send
+     * @return The future completed with the response of the bulk request
+     * @throws IOException If the bulk cannot be sent
+     */
+    private CompletableFuture<BulkResponse> executeTypedBulkAsync(List<Map<String, Object>> documents) throws IOException {
+        BulkRequest request = createTypedBulk(documents);
+        long start = metrics.onBulkStarted();
+        try {
+            return asyncClient.bulk(request).whenComplete((response, error) -> {
+                if (error == null) {
+                    metrics.onBulkResponse(start, 0, true);
+                } else {
+                    metrics.onBulkFailed();
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            metrics.onBulkFailed();
+            throw e;
+        }
+    }
+
+    private BulkRequest createTypedBulk(List<Map<String, Object>> documents) {
+        BulkRequest.Builder builder = new BulkRequest.Builder();
+        if (!isBlank(getConfiguration().getPipeline())) {
+            builder.pipeline(getConfiguration().getPipeline());
+        }
+        for (Map<String, Object> document : documents) {
+            builder.operations(operation -> operation
+                    .index(index -> index
+                            .index(getIndexName(document))
+                            .document(document)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Sends the given bulk already encoded in NDJSON format, retrying the whole request when it fails with a transient
+     * error and the documents refused with a retryable status. The documents permanently refused are given to the
+     * dead-letter handler, and the documents still refused once all retries have been exhausted are stored in the spool
+     * (if enabled) or given to the dead-letter handler.
+     *
+     * @param bulk The buffer containing the bulk operations
+     * @throws IOException If the bulk cannot be delivered at all, in which case nothing has been sent
+     */
+    protected void sendEncodedBulk(BulkBuffer bulk) throws IOException {
+        sendBatch(new EncodedBatch(bulk), null, 0);
+    }
+
+    /**
+     * Sends the given batch, or handles the response already received for it, retrying the whole request when it
+     * fails with a transient error and the documents refused with a retryable status, with the same backoff whether
+     * the documents are encoded or typed and sent synchronously or not. The documents permanently refused are given
+     * to the dead-letter handler, and the documents still refused once all retries have been exhausted are stored
+     * in the spool (if enabled) or given to the dead-letter handler.
+     *
+     * @param batch    The documents to send
+     * @param response The response already received for the batch or {@code null} to send it first
+     * @param attempt  The number of attempts already made
+     * @return {@code true} if all the documents have been sent successfully, {@code false} otherwise
+     * @throws IOException If the batch cannot be delivered at all, in which case nothing has been sent
+     */
+    private boolean sendBatch(Batch batch, BulkResponse response, int attempt) throws IOException {
+        try {
+            for (; ; attempt++, response = null) {
+                try {
+                    if (response == null) {
+                        response = batch.execute();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (isTransient(e) && awaitRetry(attempt)) {
+                        continue;
+                    }
+                    if (!batch.isRetrying()) {
+                        throw e;
+                    }
+                    batch.failed(e);
+                    return false;
+                }
+
+                handleResponse(response, batch.getDocuments(), batch::refused);
+                if (!response.errors()) {
+                    return true;
+                }
+                if (!batch.hasRetries()) {
+                    return false;
+                }
+                if (!awaitRetry(attempt)) {
+                    batch.retriesExhausted();
+                    return false;
+                }
+                batch.nextAttempt();
+            }
+        } finally {
+            batch.release();
+        }
+    }
+
+    /**
+     * Sends the given bulk already encoded in NDJSON format using the generic endpoint of the client.
+     *
+     * @param bulk The buffer containing the bulk operations
+     * @return The response of the bulk request
+     * @throws IOException If the bulk cannot be delivered or is refused with an HTTP error status
+     */
+    protected BulkResponse executeEncodedBulk(BulkBuffer bulk) throws IOException {
+        BulkBuffer body = compress(bulk);
+        long start = metrics.onBulkStarted();
+        Response response;
+        try {
+            response = genericClient.execute(createEncodedRequest(body));
+        } catch (IOException | RuntimeException e) {
+            metrics.onBulkFailed();
+            throw e;
+        } finally {
+            releaseCompressed(bulk, body);
+        }
+        try (response) {
+            return readEncodedResponse(response, bulk, start);
+        }
+    }
+
+    /**
+     * Sends asynchronously the given bulk already encoded in NDJSON format using the generic endpoint of the client.
+     * Note that the buffer must not be modified or released until the returned future is completed.
+     *
+     * @param bulk The buffer containing the bulk operations
+     * @return The future completed with the response of the bulk request, or exceptionally if the bulk cannot
+     * be delivered or is refused with an HTTP error status
+     */
+    protected CompletableFuture<BulkResponse> executeEncodedBulkAsync(BulkBuffer bulk) {
+        BulkBuffer body;
+        try {
+            body = compress(bulk);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = metrics.onBulkStarted();
+        return genericClient.executeAsync(createEncodedRequest(body))
+                .whenComplete((response, error) -> {
+                    releaseCompressed(bulk, body);
+                    if (error != null) {
+                        metrics.onBulkFailed();
+                    }
+                })
+                .thenApply(response -> {
+                    try (response) {
+                        return readEncodedResponse(response, bulk, start);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Compresses the given bulk if compression is enabled.
+     *
+     * @param bulk The buffer containing the bulk operations
+     * @return A buffer from the pool containing the compressed bulk, or the given bulk if compression is disabled
+     * @throws IOException If the bulk cannot be compressed
+     */
+    private BulkBuffer compress(BulkBuffer bulk) throws IOException {
+        if (compressor == null) {
+            return bulk;
+        }
+        BulkBuffer compressed = bufferPool.acquire();
+        try {
+            compressor.compress(bulk, compressed);
+            return compressed;
+        } catch (IOException e) {
+            bufferPool.release(compressed);
+            throw e;
+        }
+    }
+
+    private void releaseCompressed(BulkBuffer bulk, BulkBuffer body) {
+        if (body != bulk) {
+            bufferPool.release(body);
+        }
+    }
+
+    private Request createEncodedRequest(BulkBuffer body) {
+        return Requests.builder()
+                .method("POST")
+                .endpoint("/_bulk")
+                .query(bulkParameters)
+                .body(Body.from(body.toInputStream(), BULK_CONTENT_TYPE))
+                .build();
+    }
+
+    private BulkResponse readEncodedResponse(Response response, BulkBuffer bulk, long start) throws BulkStatusException {
+        metrics.onBulkResponse(start, bulk.getContentLength(), response.getStatus() < 300);
+        if (response.getStatus() == 429 && batchSize != null) {
+            batchSize.onRejected();
+        }
+        if (response.getStatus() >= 300) {
+            throw new BulkStatusException(response.getStatus(), response.getReason());
+        }
+        return Bodies.json(response.getBody().orElseThrow(), BulkResponse._DESERIALIZER, client._transport().jsonpMapper());
+    }
+
+    /**
+     * Checks the response of a bulk request and gives each item in error to the given handler.
+     *
+     * @param response  The response received
+     * @param documents The number of documents sent
+     * @param handler   The handler receiving the position of each document in error and its response item
+     */
+    protected void handleResponse(BulkResponse response, int documents, ObjIntConsumer<BulkResponseItem> handler) {
+        if (!response.errors()) {
+            onSuccess(response, documents);
+            return;
+        }
+        boolean rejected = false;
+        int indexed = 0;
+        List<BulkResponseItem> items = response.items();
+        for (int index = 0; index < items.size() && index < documents; index++) {
+            if (items.get(index).error() == null) {
+                indexed++;
+            } else if (!isDuplicate(items.get(index))) {
+                metrics.onFailedDocument();
+                rejected |= items.get(index).status() == 429;
+                handler.accept(items.get(index), index);
+            }
+        }
+        metrics.onSentDocuments(indexed);
+        if (batchSize != null) {
+            batchSize.onResponse(response.took(), documents, rejected);
+        }
+    }
+
+    /**
+     * Indicates if the given item has been refused because a document with the same identifier already exists,
+     * meaning that it has already been indexed by a previous attempt (only possible with client-side identifiers).
+     *
+     * @param item The response item in error
+     * @return {@code true} if the document has already been indexed, {@code false} otherwise
+     */
+    protected boolean isDuplicate(BulkResponseItem item) {
+        return item.status() == 409 && getConfiguration().isDataStream();
+    }
+
+    private void onSuccess(BulkResponse response, int documents) {
+        log.debug("Bulk of {} documents sent successfully in {}ms", documents, response.took());
+        metrics.onSentDocuments(documents);
+        if (batchSize != null) {
+            batchSize.onResponse(response.took(), documents, false);
+        }
+    }
+
+    /**
+     * Indicates if a document or bulk refused with the given status can be sent again later.
+     *
+     * @param status The HTTP status
+     * @return {@code true} if the status is transient (too many requests or unavailable node), {@code false} otherwise
+     */
+    protected boolean isRetryable(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Indicates if a whole bulk request failing with the given error can be sent again later.
+     *
+     * @param error The error of the bulk request
+     * @return {@code true} if the error is an I/O error or a transient status, {@code false} otherwise
+     */
+    protected boolean isTransient(Throwable error) {
+        if (error instanceof OpenSearchException e) {
+            return isRetryable(e.status());
+        } else if (error instanceof BulkStatusException e) {
+            return isRetryable(e.getStatus());
+        }
+        return error instanceof IOException;
+    }
+
+    /**
+     * Waits before the next retry, with an exponential backoff and jitter to avoid all clients retrying together.
+     * When the delivery is closing, no retry is made if it cannot be done before the shutdown deadline.
+     *
+     * @param attempt The number of the attempt that just failed, starting from {@code 0}
+     * @return {@code true} if another attempt can be made, {@code false} if all retries have been exhausted
+     */
+    protected boolean awaitRetry(int attempt) {
+        if (attempt >= getConfiguration().getMaxRetries()) {
+            return false;
+        }
+        long initial = getConfiguration().getRetryInitialDelay().toMillis();
+        long delay = Math.min(getConfiguration().getRetryMaxDelay().toMillis(), initial << Math.min(attempt, 30));
+        if (closing && TimeUnit.MILLISECONDS.toNanos(delay) > getRemainingShutdownTime()) {
+            return false;
+        }
+        try {
+            Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            metrics.onRetry();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Handles a whole bulk that could not be delivered, storing its documents for later when the failure is transient
+     * or giving them to the dead-letter handler when the bulk has been refused with a permanent status.
+     *
+     * @param bulk  The bulk not delivered
+     * @param error The error of the bulk request
+     */
+    private void bulkFailed(BulkBuffer bulk, Throwable error) {
+        log.warn("Unable to send bulk of {} documents: {}", bulk.getDocuments(), error.getMessage(), error);
+        if (isTransient(error)) {
+            retriesExhausted(bulk);
+        } else {
+            deadLetter(bulk);
+        }
+    }
+
+    private void bulkFailed(List<Map<String, Object>> documents, Throwable error) {
+        log.warn("Unable to send bulk of {} documents: {}", documents.size(), error.getMessage(), error);
+        if (isTransient(error)) {
+            retriesExhausted(documents);
+        } else {
+            documents.forEach(document -> deadLetter(null, document));
+        }
+    }
+
+    /**
+     * Stores the documents not delivered once all retries have been exhausted in the spool (if enabled),
+     * in the spool created in the temporary directory when closing without spool,
+     * or gives them to the dead-letter handler otherwise.
+     *
+     * @param bulk The bulk containing the documents not delivered
+     */
+    private void retriesExhausted(BulkBuffer bulk) {
+        if (appendToSpool(bulk)) {
+            return;
+        }
+        if (closing && spool == null) {
+            appendToShutdownSpool(bulk);
+            return;
+        }
+        deadLetter(bulk);
+    }
+
+    private void retriesExhausted(List<Map<String, Object>> documents) {
+        if (spool != null || closing) {
+            BulkBuffer bulk = bufferPool.acquire();
+            try {
+                for (Map<String, Object> document : documents) {
+                    encoder.writeIndexOperation(bulk, getIndexName(document), document);
+                }
+                retriesExhausted(bulk);
+                return;
+            } catch (Exception e) {
+                log.warn("Unable to encode bulk of {} documents for spool: {}", documents.size(), e.getMessage(), e);
+            } finally {
+                bufferPool.release(bulk);
+            }
+        }
+        for (Map<String, Object> document : documents) {
+            deadLetter(null, document);
+        }
+    }
+
+    /**
+     * Stores the given bulk not delivered when closing into a spool created in the temporary directory,
+     * when no spool is configured, instead of giving its documents to the dead-letter handler, which may
+     * log them through the appender being stopped. The spool can then be replayed by setting its directory
+     * in {@code SpoolDirectory}. The documents that cannot be stored are counted as dropped.
+     *
+     * @param bulk The bulk not delivered
+     */
+    private void appendToShutdownSpool(BulkBuffer bulk) {
+        synchronized (shutdownSpoolLock) {
+            try {
+                if (shutdownSpool == null) {
+                    Path directory = Files.createTempDirectory("opensearch-spool-");
+                    shutdownSpool = new BulkSpool(directory, getConfiguration().getSpoolMaxSize(), getConfiguration().getSpoolSegmentSize());
+                    shutdownSpoolDirectory = directory;
+                    log.warn("Documents not delivered before shutdown stored in {}, which can be set as SpoolDirectory to send them", directory);
+                }
+                if (shutdownSpool.append(bulk)) {
+                    metrics.onSpooled(bulk.getDocuments());
+                    return;
+                }
+            } catch (IOException e) {
+                log.warn("Unable to create spool for documents not delivered before shutdown: {}", e.getMessage(), e);
+            }
+        }
+        log.warn("Bulk of {} documents not delivered before shutdown dropped", bulk.getDocuments());
+        pendingBudget.drop(bulk.getDocuments());
+    }
+
+    private void deadLetter(BulkBuffer bulk) {
+        for (int index = 0; index < bulk.getDocuments(); index++) {
+            deadLetter(null, bulk.getDocumentSource(index));
+        }
+    }
+
+    private void deadLetter(BulkResponseItem item, Map<String, Object> document) {
+        metrics.onDeadLetter();
+        try {
+            getConfiguration().getDeadLetterHandler().handle(item, objectMapper.writeValueAsString(document));
+        } catch (Exception e) {
+            log.warn("Unable to handle refused document: {}", e.getMessage(), e);
+        }
+    }
+
+    private void deadLetter(BulkResponseItem item, String document) {
+        metrics.onDeadLetter();
+        try {
+            getConfiguration().getDeadLetterHandler().handle(item, document);
+        } catch (Exception e) {
+            log.warn("Unable to handle refused document: {}", e.getMessage(), e);
+        }
+    }
+
+    private void awaitInFlightBulks() throws InterruptedException {
+        int permits = getConfiguration().getMaxInFlightBulks();
+        if (!inFlight.tryAcquire(permits, getRemainingShutdownTime(), TimeUnit.NANOSECONDS)) {
+            log.warn("Bulks still in flight after timeout: {}", permits - inFlight.availablePermits());
+            abandonedRequests = true;
+        }
+        retryExecutor.shutdown();
+    }
+
+    /**
+     * Sets the time by which the delivery must be closed. From then on, retries are only made if they can be
+     * completed before the deadline, and {@link #close()} sends the documents still pending concurrently
+     * until the deadline, storing the ones not delivered in time in the spool (or in a spool created
+     * in the temporary directory if not enabled).
+     *
+     * @param deadline The deadline, as given by {@link System#nanoTime()}
+     */
+    public void setShutdownDeadline(long deadline) {
+        this.shutdownDeadline = deadline;
+        this.closing = true;
+    }
+
+    private long getRemainingShutdownTime() {
+        return Math.max(0, shutdownDeadline - System.nanoTime());
+    }
+
+    /**
+     * Sends the bulks ready to be sent when closing, merged into bulks as large as allowed and sent concurrently,
+     * waiting for their responses until the shutdown deadline.
+     */
+    private void drainReadyBulks() {
+        Semaphore permits = new Semaphore(Math.max(DRAIN_CONCURRENCY, getConfiguration().getMaxInFlightBulks()));
+        List<DrainedBulk> drained = new ArrayList<>();
+        BulkBuffer bulk;
+        while ((bulk = pollMergedBulk()) != null) {
+            if (!tryAcquire(permits)) {
+                abandonDrainedBulk(bulk);
+                continue;
+            }
+            DrainedBulk sent = new DrainedBulk(bulk);
+            drained.add(sent);
+            executeEncodedBulkAsync(bulk).whenComplete((response, error) -> {
+                permits.release();
+                if (sent.settle()) {
+                    completeDrainedBulk(sent.bulk, response, error);
+                }
+                sent.completed.complete(null);
+            });
+        }
+        try {
+            CompletableFuture.allOf(drained.stream().map(sent -> sent.completed).toArray(CompletableFuture[]::new))
+                    .get(getRemainingShutdownTime(), TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            for (DrainedBulk sent : drained) {
+                if (sent.settle()) {
+                    abandonedRequests = true;
+                    log.warn("Bulk of {} documents not acknowledged before shutdown timeout", sent.bulk.getDocuments());
+                    retriesExhausted(sent.bulk);
+                    pendingBudget.release(sent.bulk.getDocuments(), sent.bulk.getContentLength());
+                }
+            }
+        }
+    }
+
+    private boolean tryAcquire(Semaphore permits) {
+        try {
+            return permits.tryAcquire(getRemainingShutdownTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Polls the next bulk ready to be sent, merged with the following ones as long as the size limit
+     * (the flush size or 10 MB if not set) is not reached.
+     *
+     * @return The merged bulk or {@code null} if there are no bulks ready
+     */
+    private synchronized BulkBuffer pollMergedBulk() {
+        BulkBuffer merged = readyBulks.pollFirst();
+        long limit = getConfiguration().getFlushBytes() > 0 ? getConfiguration().getFlushBytes() : DRAIN_MAX_BULK_SIZE;
+        while (merged != null && !readyBulks.isEmpty()
+                && merged.getContentLength() + readyBulks.peekFirst().getContentLength() <= limit) {
+            BulkBuffer next = readyBulks.pollFirst();
+            for (int index = 0; index < next.getDocuments(); index++) {
+                next.copyDocumentTo(index, merged);
+            }
+            bufferPool.release(next);
+        }
+        return merged;
+    }
+
+    /**
+     * Handles the response of a bulk sent when closing, storing the documents refused with a transient status
+     * in the spool (or in a spool created in the temporary directory if not enabled), without any retry.
+     *
+     * @param bulk     The bulk sent
+     * @param response The response received or {@code null} if the bulk could not be sent
+     * @param error    The error that occurred or {@code null} if a response has been received
+     */
+    private void completeDrainedBulk(BulkBuffer bulk, BulkResponse response, Throwable error) {
+        EncodedBatch batch = new EncodedBatch(bulk);
+        completeWithoutRetry(batch, response, error);
+        batch.complete();
+    }
+
+    /**
+     * Handles the response of a batch without any retry, the documents refused with a transient status or not
+     * delivered because of a transient error being stored in the spool (or in a spool created in the temporary
+     * directory when closing) and the others given to the dead-letter handler.
+     *
+     * @param batch    The documents sent
+     * @param response The response received or {@code null} if the bulk could not be sent
+     * @param error    The error that occurred or {@code null} if a response has been received
+     */
+    private void completeWithoutRetry(Batch batch, BulkResponse response, Throwable error) {
+        if (error != null) {
+            batch.failed(error instanceof CompletionException ? error.getCause() : error);
+            return;
+        }
+        try {
+            handleResponse(response, batch.getDocuments(), batch::refused);
+            if (batch.hasRetries()) {
+                batch.retriesExhausted();
+            }
+        } finally {
+            batch.release();
+        }
+    }
+
+    private void abandonDrainedBulk(BulkBuffer bulk) {
+        retriesExhausted(bulk);
+        pendingBudget.release(bulk.getDocuments(), bulk.getContentLength());
+        bufferPool.release(bulk);
+    }
+
     @Override
     public void close() throws Exception {
+        if (!closing) {
+            setShutdownDeadline(System.nanoTime() + getConfiguration().getShutdownTimeout().toNanos());
+        }
+        flushExecutor.shutdown();
+        if (!flushExecutor.awaitTermination(getRemainingShutdownTime(), TimeUnit.NANOSECONDS)) {
+            log.warn("Pending bulks not sent before timeout");
+        }
         super.close();
+        if (inFlight != null) {
+            awaitInFlightBulks();
+        }
+        if (spool != null) {
+            spoolReplayer.shutdownNow();
+            spool.close();
+        }
+        synchronized (shutdownSpoolLock) {
+            if (shutdownSpool != null) {
+                shutdownSpool.close();
+            }
+        }
+        metrics.unregister();
         if (client != null) {
+            closeTransport();
+        }
+    }
+
+    /**
+     * Closes the transport of the client, which waits for the requests still in flight to be completed.
+     * If requests have been abandoned at the shutdown deadline, the transport is closed in background
+     * to avoid exceeding the deadline. The documents of the bulks sent when closing are then already stored
+     * in the spool, whereas the ones of the bulks still in flight are only stored in the spool or given to the
+     * dead-letter handler once their request completes or fails, which may never happen if the process exits first.
+     *
+     * @throws IOException If the transport cannot be closed
+     */
+    private void closeTransport() throws IOException {
+        if (!abandonedRequests) {
             client._transport().close();
+            return;
+        }
+        createThreadFactory(getConfiguration(), "OpensearchClose").newThread(() -> {
+            try {
+                client._transport().close();
+            } catch (IOException e) {
+                log.debug("Unable to close transport: {}", e.getMessage());
+            }
+        }).start();
+    }
+
+    /**
+     * Documents sent together in bulk requests, either encoded in NDJSON or typed, so that both kinds of bulks are
+     * sent, retried, stored and released the same way. Each attempt sends the documents kept for retry by the previous
+     * one, the original documents being kept until the batch is completed.
+     */
+    private abstract class Batch {
+
+        /**
+         * Gets the number of documents of the current attempt.
+         *
+         * @return The number of documents
+         */
+        abstract int getDocuments();
+
+        /**
+         * Sends the documents of the current attempt.
+         *
+         * @return The response of the bulk request
+         * @throws IOException If the bulk cannot be delivered
+         */
+        abstract BulkResponse execute() throws IOException;
+
+        /**
+         * Sends asynchronously the documents of the current attempt.
+         *
+         * @return The future completed with the response of the bulk request
+         * @throws IOException If the bulk cannot be sent
+         */
+        abstract CompletableFuture<BulkResponse> executeAsync() throws IOException;
+
+        /**
+         * Keeps the document at the given position of the current attempt for the next one.
+         *
+         * @param index The position of the document in the current attempt
+         */
+        abstract void keep(int index);
+
+        /**
+         * Gives the document at the given position of the current attempt to the dead-letter handler.
+         *
+         * @param item  The response item of the document
+         * @param index The position of the document in the current attempt
+         */
+        abstract void refuse(BulkResponseItem item, int index);
+
+        /**
+         * Indicates if documents have been kept for the next attempt.
+         *
+         * @return {@code true} if there are documents to send again, {@code false} otherwise
+         */
+        abstract boolean hasRetries();
+
+        /**
+         * Starts the next attempt with the documents kept by the current one.
+         */
+        abstract void nextAttempt();
+
+        /**
+         * Indicates if the current attempt only contains documents kept for retry by a previous one.
+         *
+         * @return {@code true} if the original documents have already been sent, {@code false} otherwise
+         */
+        abstract boolean isRetrying();
+
+        /**
+         * Handles the documents of the current attempt that could not be delivered at all.
+         *
+         * @param error The error of the bulk request
+         */
+        abstract void failed(Throwable error);
+
+        /**
+         * Handles the documents kept for retry once all retries have been exhausted.
+         */
+        abstract void retriesExhausted();
+
+        /**
+         * Releases the documents kept by the attempts, going back to the original documents.
+         */
+        abstract void release();
+
+        /**
+         * Releases the original documents and their pending budget, once they have been completely handled.
+         */
+        abstract void complete();
+
+        void refused(BulkResponseItem item, int index) {
+            if (isRetryable(item.status())) {
+                keep(index);
+            } else {
+                refuse(item, index);
+            }
+        }
+
+    }
+
+    /**
+     * Batch of documents already encoded in NDJSON format, whose retries are copied into buffers from the pool.
+     */
+    private final class EncodedBatch extends Batch {
+
+        private final BulkBuffer bulk;
+        private final int documents;
+        private final int size;
+        private BulkBuffer current;
+        private BulkBuffer retry;
+
+        private EncodedBatch(BulkBuffer bulk) {
+            this.bulk = bulk;
+            this.documents = bulk.getDocuments();
+            this.size = bulk.getContentLength();
+            this.current = bulk;
+        }
+
+        @Override
+        int getDocuments() {
+            return current.getDocuments();
+        }
+
+        @Override
+        BulkResponse execute() throws IOException {
+            return executeEncodedBulk(current);
+        }
+
+        @Override
+        CompletableFuture<BulkResponse> executeAsync() {
+            return executeEncodedBulkAsync(current);
+        }
+
+        @Override
+        void keep(int index) {
+            if (retry == null) {
+                retry = bufferPool.acquire();
+            }
+            current.copyDocumentTo(index, retry);
         }
+
+        @Override
+        void refuse(BulkResponseItem item, int index) {
+            deadLetter(item, current.getDocumentSource(index));
+        }
+
+        @Override
+        boolean hasRetries() {
+            return retry != null && retry.getDocuments() > 0;
+        }
+
+        @Override
+        void nextAttempt() {
+            BulkBuffer previous = current;
+            current = retry;
+            retry = null;
+            if (previous != bulk) {
+                previous.reset();
+                retry = previous;
+            }
+        }
+
+        @Override
+        boolean isRetrying() {
+            return current != bulk;
+        }
+
+        @Override
+        void failed(Throwable error) {
+            bulkFailed(current, error);
+        }
+
+        @Override
+        void retriesExhausted() {
+            OpensearchLogDelivery.this.retriesExhausted(retry);
+        }
+
+        @Override
+        void release() {
+            if (current != bulk) {
+                bufferPool.release(current);
+                current = bulk;
+            }
+            if (retry != null) {
+                bufferPool.release(retry);
+                retry = null;
+            }
+        }
+
+        @Override
+        void complete() {
+            pendingBudget.release(documents, size);
+            bufferPool.release(bulk);
+        }
+
+    }
+
+    /**
+     * Batch of documents sent with typed bulk requests, whose retries are kept in lists.
+     */
+    private final class TypedBatch extends Batch {
+
+        private final List<Map<String, Object>> documents;
+        private List<Map<String, Object>> current;
+        private List<Map<String, Object>> retry;
+
+        private TypedBatch(List<Map<String, Object>> documents) {
+            this.documents = documents;
+            this.current = documents;
+        }
+
+        @Override
+        int getDocuments() {
+            return current.size();
+        }
+
+        @Override
+        BulkResponse execute() throws IOException {
+            return executeTypedBulk(current);
+        }
+
+        @Override
+        CompletableFuture<BulkResponse> executeAsync() throws IOException {
+            return executeTypedBulkAsync(current);
+        }
+
+        @Override
+        void keep(int index) {
+            if (retry == null) {
+                retry = new ArrayList<>();
+            }
+            retry.add(current.get(index));
+        }
+
+        @Override
+        void refuse(BulkResponseItem item, int index) {
+            deadLetter(item, current.get(index));
+        }
+
+        @Override
+        boolean hasRetries() {
+            return retry != null && !retry.isEmpty();
+        }
+
+        @Override
+        void nextAttempt() {
+            current = retry;
+            retry = null;
+        }
+
+        @Override
+        boolean isRetrying() {
+            return current != documents;
+        }
+
+        @Override
+        void failed(Throwable error) {
+            bulkFailed(current, error);
+        }
+
+        @Override
+        void retriesExhausted() {
+            OpensearchLogDelivery.this.retriesExhausted(retry);
+        }
+
+        @Override
+        void release() {
+            current = documents;
+            retry = null;
+        }
+
+        @Override
+        void complete() {
+            pendingBudget.release(documents.size(), 0);
+        }
+
+    }
+
+    /**
+     * Bulk sent when closing, settled either by its response or by the shutdown timeout, whichever comes first.
+     * Note that a bulk settled by the timeout is not given back to the pool, since it may still be read by the client.
+     */
+    private static final class DrainedBulk {
+
+        private final BulkBuffer bulk;
+        private final CompletableFuture<Void> completed = new CompletableFuture<>();
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private DrainedBulk(BulkBuffer bulk) {
+            this.bulk = bulk;
+        }
+
+        private boolean settle() {
+            return settled.compareAndSet(false, true);
+        }
+
     }
 
 }
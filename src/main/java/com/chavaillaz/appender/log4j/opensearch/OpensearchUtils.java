@@ -1,14 +1,28 @@
 package com.chavaillaz.appender.log4j.opensearch;
 
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.opensearch.client.transport.httpclient5.ApacheHttpClient5TransportBuilder.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+import static org.opensearch.client.transport.httpclient5.ApacheHttpClient5TransportBuilder.DEFAULT_MAX_CONN_PER_ROUTE;
+import static org.opensearch.client.transport.httpclient5.ApacheHttpClient5TransportBuilder.DEFAULT_MAX_CONN_TOTAL;
+import static org.opensearch.client.transport.httpclient5.ApacheHttpClient5TransportBuilder.DEFAULT_RESPONSE_TIMEOUT_MILLIS;
 
 import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
 
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
 import org.apache.hc.client5.http.auth.AuthScope;
 import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultAuthenticationStrategy;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder;
 import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider;
 import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.nio.AsyncClientConnectionManager;
@@ -18,11 +32,18 @@ import org.apache.hc.client5.http.ssl.TrustAllStrategy;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.http.message.BasicHeader;
-import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.reactor.IOReactorConfig;
 import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.logging.log4j.core.util.Log4jThreadFactory;
 import org.opensearch.client.json.jackson.JacksonJsonpMapper;
 import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.transport.OpenSearchTransport;
+import org.opensearch.client.transport.httpclient5.ApacheHttpClient5Transport;
 import org.opensearch.client.transport.httpclient5.ApacheHttpClient5TransportBuilder;
+import org.opensearch.client.transport.httpclient5.internal.Node;
 
 /**
  * OpenSearch specific utility methods.
@@ -30,6 +51,8 @@ import org.opensearch.client.transport.httpclient5.ApacheHttpClient5TransportBui
 @UtilityClass
 public class OpensearchUtils {
 
+    private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2);
+
     /**
      * Creates a new OpenSearch client.
      *
@@ -37,60 +60,239 @@ public class OpensearchUtils {
      * @return The OpenSearch client with the given configuration
      */
     public static OpenSearchClient createClient(OpensearchConfiguration configuration) {
-        if (isNotBlank(configuration.getApiKey())) {
-            return createClient(configuration.getUrl(), configuration.isUrlTrusted(), configuration.getApiKey());
-        } else {
-            return createClient(configuration.getUrl(), configuration.isUrlTrusted(), configuration.getUser(), configuration.getPassword());
+        List<Node> nodes = createNodes(configuration.getUrl());
+        Duration sniffInterval = configuration.getSniffInterval();
+        if (sniffInterval != null && sniffInterval.isPositive()) {
+            CloseableHttpAsyncClient httpClient = createHttpClient(configuration);
+            return new OpenSearchClient(new SniffingTransport(nodes, sniffed -> createTransport(configuration, httpClient, sniffed), sniffInterval,
+                    createThreadFactory(configuration, "OpensearchSniffer")));
+        }
+        return new OpenSearchClient(createTransport(configuration, nodes));
+    }
+
+    /**
+     * Creates a new OpenSearch transport balancing the requests across the given nodes.
+     *
+     * @param configuration The configuration to use
+     * @param nodes         The nodes to which send the requests
+     * @return The OpenSearch transport with the given configuration
+     */
+    public static OpenSearchTransport createTransport(OpensearchConfiguration configuration, List<Node> nodes) {
+        ApacheHttpClient5TransportBuilder builder = createTransportBuilder(nodes, configuration);
+        if (configuration.getNodeSelection() != null) {
+            builder.setNodeSelector(configuration.getNodeSelection().getSelector());
         }
+
+        builder.setCompressionEnabled(isTransportCompressed(configuration));
+        return builder.build();
+    }
+
+    /**
+     * Creates a new OpenSearch transport balancing the requests across the given nodes with the given HTTP client,
+     * so that several transports (for instance one per set of nodes discovered) share the same connection pool
+     * and I/O reactor. Note that closing any of these transports closes the HTTP client.
+     *
+     * @param configuration The configuration to use
+     * @param httpClient    The HTTP client already started, created with {@link #createHttpClient(OpensearchConfiguration)}
+     * @param nodes         The nodes to which send the requests
+     * @return The OpenSearch transport with the given configuration
+     */
+    public static OpenSearchTransport createTransport(OpensearchConfiguration configuration, CloseableHttpAsyncClient httpClient, List<Node> nodes) {
+        return new ApacheHttpClient5Transport(httpClient, createDefaultHeaders(configuration), nodes, getJsonMapper(), null, null, null,
+                configuration.getNodeSelection() != null ? configuration.getNodeSelection().getSelector() : null,
+                false, isTransportCompressed(configuration), false);
+    }
+
+    /**
+     * Creates and starts a new HTTP client with the same settings as the transports created by
+     * {@link #createTransportBuilder(List, OpensearchConfiguration)}.
+     *
+     * @param configuration The configuration containing the credentials and the settings of the connections
+     * @return The HTTP client started
+     */
+    @SneakyThrows
+    public static CloseableHttpAsyncClient createHttpClient(OpensearchConfiguration configuration) {
+        RequestConfig.Builder requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(DEFAULT_CONNECT_TIMEOUT_MILLIS))
+                .setResponseTimeout(Timeout.ofMilliseconds(DEFAULT_RESPONSE_TIMEOUT_MILLIS));
+        HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create()
+                .setDefaultRequestConfig(configureRequests(requestConfig, configuration).build())
+                .setTargetAuthenticationStrategy(DefaultAuthenticationStrategy.INSTANCE)
+                .disableAutomaticRetries();
+        CloseableHttpAsyncClient httpClient = configureHttpClient(builder, configuration, getClientConnectionManager(configuration)).build();
+        httpClient.start();
+        return httpClient;
+    }
+
+    /**
+     * Indicates if the requests must be compressed by the transport, which is not the case of streaming bulks
+     * compressed by the delivery itself with the configured algorithm and level.
+     *
+     * @param configuration The configuration to use
+     * @return {@code true} if the transport must compress the requests with GZIP, {@code false} otherwise
+     */
+    private static boolean isTransportCompressed(OpensearchConfiguration configuration) {
+        return !configuration.isStreamingBulk()
+                && configuration.getCompression() != null
+                && configuration.getCompression() != Compression.NONE;
+    }
+
+    /**
+     * Creates the nodes corresponding to the given URLs.
+     *
+     * @param urls The URLs of the OpenSearch nodes, separated by commas
+     * @return The nodes, in the same order as the URLs
+     */
+    @SneakyThrows
+    public static List<Node> createNodes(String urls) {
+        List<Node> nodes = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            if (isNotBlank(url)) {
+                nodes.add(new Node(HttpHost.create(url.trim())));
+            }
+        }
+        return nodes;
     }
 
     /**
      * Creates a new OpenSearch client.
      *
-     * @param url      The URL of the OpenSearch instance to reach
+     * @param url      The URLs of the OpenSearch nodes to reach, separated by commas
      * @param trusted  If {@code true} the client will trust all certificates
      * @param username The username to authenticate
      * @param password The password corresponding to the given username
      * @return The OpenSearch client with the given configuration
      */
-    @SneakyThrows
     public static OpenSearchClient createClient(String url, boolean trusted, String username, String password) {
-        AsyncClientConnectionManager connectionManager = getClientConnectionManager(trusted);
-        BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-        credentialsProvider.setCredentials(
-                new AuthScope(null, -1),
-                new UsernamePasswordCredentials(username, password.toCharArray())
-        );
-
-        return new OpenSearchClient(ApacheHttpClient5TransportBuilder
-                .builder(HttpHost.create(url))
-                .setMapper(getJsonMapper())
-                .setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
-                        .setDefaultCredentialsProvider(credentialsProvider)
-                        .setConnectionManager(connectionManager))
-                .build());
+        return new OpenSearchClient(createTransportBuilder(url, trusted, username, password).build());
+    }
+
+    /**
+     * Creates a new OpenSearch transport builder.
+     *
+     * @param url      The URLs of the OpenSearch nodes to reach, separated by commas
+     * @param trusted  If {@code true} the client will trust all certificates
+     * @param username The username to authenticate
+     * @param password The password corresponding to the given username
+     * @return The transport builder with the given configuration
+     */
+    public static ApacheHttpClient5TransportBuilder createTransportBuilder(String url, boolean trusted, String username, String password) {
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setUrlTrusted(trusted);
+        configuration.setUser(username);
+        configuration.setPassword(password);
+        return createTransportBuilder(createNodes(url), configuration);
     }
 
     /**
      * Creates a new OpenSearch client.
      *
-     * @param url     The URL of the OpenSearch instance to reach
+     * @param url     The URLs of the OpenSearch nodes to reach, separated by commas
      * @param trusted If {@code true} the client will trust all certificates
      * @param apiKey  The encoded API key to authenticate
      * @return The OpenSearch client with the given configuration
      */
-    @SneakyThrows
     public static OpenSearchClient createClient(String url, boolean trusted, String apiKey) {
-        AsyncClientConnectionManager connectionManager = getClientConnectionManager(trusted);
-        Header headerApiKey = new BasicHeader("Authorization", "ApiKey " + apiKey);
+        return new OpenSearchClient(createTransportBuilder(url, trusted, apiKey).build());
+    }
 
-        return new OpenSearchClient(ApacheHttpClient5TransportBuilder
-                .builder(HttpHost.create(url))
+    /**
+     * Creates a new OpenSearch transport builder.
+     *
+     * @param url     The URLs of the OpenSearch nodes to reach, separated by commas
+     * @param trusted If {@code true} the client will trust all certificates
+     * @param apiKey  The encoded API key to authenticate
+     * @return The transport builder with the given configuration
+     */
+    public static ApacheHttpClient5TransportBuilder createTransportBuilder(String url, boolean trusted, String apiKey) {
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setUrlTrusted(trusted);
+        configuration.setApiKey(apiKey);
+        return createTransportBuilder(createNodes(url), configuration);
+    }
+
+    /**
+     * Creates a new OpenSearch transport builder, authenticating with the API key if defined
+     * or with the username and password otherwise. The settings of the connections not defined
+     * in the configuration ({@code 0} or {@code null}) keep the default value of the client.
+     *
+     * @param nodes         The nodes of the OpenSearch cluster to reach
+     * @param configuration The configuration containing the credentials and the settings of the connections
+     * @return The transport builder with the given configuration
+     */
+    @SneakyThrows
+    public static ApacheHttpClient5TransportBuilder createTransportBuilder(List<Node> nodes, OpensearchConfiguration configuration) {
+        AsyncClientConnectionManager connectionManager = getClientConnectionManager(configuration);
+        ApacheHttpClient5TransportBuilder builder = ApacheHttpClient5TransportBuilder
+                .builder(nodes.toArray(Node[]::new))
                 .setMapper(getJsonMapper())
-                .setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
-                        .setConnectionManager(connectionManager))
-                .setDefaultHeaders(new Header[]{headerApiKey})
-                .build());
+                .setRequestConfigCallback(requestConfigBuilder -> configureRequests(requestConfigBuilder, configuration))
+                .setHttpClientConfigCallback(httpClientBuilder -> configureHttpClient(httpClientBuilder, configuration, connectionManager));
+
+        if (isNotBlank(configuration.getApiKey())) {
+            builder.setDefaultHeaders(createDefaultHeaders(configuration));
+        }
+        return builder;
+    }
+
+    private static RequestConfig.Builder configureRequests(RequestConfig.Builder requestConfigBuilder, OpensearchConfiguration configuration) {
+        // The connect timeout of the request configuration takes precedence over the connection one
+        if (isPositive(configuration.getConnectTimeout())) {
+            requestConfigBuilder.setConnectTimeout(Timeout.of(configuration.getConnectTimeout()));
+        }
+        if (isPositive(configuration.getResponseTimeout())) {
+            requestConfigBuilder.setResponseTimeout(Timeout.of(configuration.getResponseTimeout()));
+        }
+        return requestConfigBuilder;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static HttpAsyncClientBuilder configureHttpClient(HttpAsyncClientBuilder httpClientBuilder, OpensearchConfiguration configuration,
+                                                              AsyncClientConnectionManager connectionManager) {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(configuration.getIoThreads() > 0 ? configuration.getIoThreads() : IOReactorConfig.DEFAULT.getIoThreadCount())
+                .setSoKeepAlive(true)
+                .build();
+        httpClientBuilder
+                .setConnectionManager(connectionManager)
+                .setIOReactorConfig(ioReactorConfig);
+        if (isPositive(configuration.getConnectionIdleTimeout())) {
+            httpClientBuilder.evictIdleConnections(TimeValue.of(configuration.getConnectionIdleTimeout()));
+        }
+        if (isPositive(configuration.getConnectionTimeToLive())) {
+            httpClientBuilder.evictExpiredConnections();
+        }
+        if (isBlank(configuration.getApiKey())) {
+            BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(
+                    new AuthScope(null, -1),
+                    new UsernamePasswordCredentials(configuration.getUser(), configuration.getPassword().toCharArray())
+            );
+            httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+        return httpClientBuilder;
+    }
+
+    private static Header[] createDefaultHeaders(OpensearchConfiguration configuration) {
+        if (isNotBlank(configuration.getApiKey())) {
+            return new Header[]{new BasicHeader("Authorization", "ApiKey " + configuration.getApiKey())};
+        }
+        return new Header[0];
+    }
+
+    /**
+     * Creates a factory of the threads used by the appender, which are virtual threads if enabled
+     * or daemon platform threads otherwise.
+     *
+     * @param configuration The configuration indicating if virtual threads must be used
+     * @param name          The name of the threads
+     * @return The thread factory
+     */
+    public static ThreadFactory createThreadFactory(OpensearchConfiguration configuration, String name) {
+        if (configuration.isVirtualThreads()) {
+            return Thread.ofVirtual().name(name + "-", 1).factory();
+        }
+        return Log4jThreadFactory.createDaemonThreadFactory(name);
     }
 
     /**
@@ -112,12 +314,45 @@ public class OpensearchUtils {
      * @throws GeneralSecurityException If there is an issue creating the SSL context
      */
     public static AsyncClientConnectionManager getClientConnectionManager(boolean trustAll) throws GeneralSecurityException {
-        TlsStrategy trustAllStrategy = new DefaultClientTlsStrategy(SSLContexts.custom()
-                .loadTrustMaterial(null, TrustAllStrategy.INSTANCE)
-                .build(), NoopHostnameVerifier.INSTANCE);
-        return PoolingAsyncClientConnectionManagerBuilder.create()
-                .setTlsStrategy(trustAll ? trustAllStrategy : null)
-                .build();
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setUrlTrusted(trustAll);
+        return getClientConnectionManager(configuration);
+    }
+
+    /**
+     * Creates a new client connection manager, sized for concurrent bulks and keeping the connections open
+     * as long as possible to avoid paying again the connection and TLS handshake. The connections are only
+     * validated after a period of inactivity, so that the ones used continuously are not checked before each request.
+     *
+     * @param configuration The configuration containing the settings of the connections
+     * @return The connection manager with a custom TLS strategy if all certificates must be trusted
+     * @throws GeneralSecurityException If there is an issue creating the SSL context
+     */
+    public static AsyncClientConnectionManager getClientConnectionManager(OpensearchConfiguration configuration) throws GeneralSecurityException {
+        ConnectionConfig.Builder connectionConfig = ConnectionConfig.custom()
+                .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+        if (isPositive(configuration.getConnectTimeout())) {
+            connectionConfig.setConnectTimeout(Timeout.of(configuration.getConnectTimeout()));
+        }
+        if (isPositive(configuration.getConnectionTimeToLive())) {
+            connectionConfig.setTimeToLive(TimeValue.of(configuration.getConnectionTimeToLive()));
+        }
+
+        PoolingAsyncClientConnectionManagerBuilder builder = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(configuration.getMaxConnections() > 0 ? configuration.getMaxConnections() : DEFAULT_MAX_CONN_TOTAL)
+                .setMaxConnPerRoute(configuration.getMaxConnectionsPerRoute() > 0 ? configuration.getMaxConnectionsPerRoute() : DEFAULT_MAX_CONN_PER_ROUTE)
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .setDefaultConnectionConfig(connectionConfig.build());
+        if (configuration.isUrlTrusted()) {
+            builder.setTlsStrategy(new DefaultClientTlsStrategy(SSLContexts.custom()
+                    .loadTrustMaterial(null, TrustAllStrategy.INSTANCE)
+                    .build(), NoopHostnameVerifier.INSTANCE));
+        }
+        return builder.build();
+    }
+
+    private static boolean isPositive(Duration duration) {
+        return duration != null && duration.isPositive();
     }
 
 }
@@ -0,0 +1,31 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+/**
+ * Policies applied when the maximum number of pending events or bytes is reached.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Blocks the logging thread until enough pending events have been sent or the overflow timeout is reached,
+     * in which case the event is dropped.
+     */
+    BLOCK,
+
+    /**
+     * Drops the new event.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drops the oldest event not yet being sent to make room for the new one.
+     * When no such event can be dropped (for instance when not using streaming bulks), the new event is dropped instead.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drops the new event if its level is less specific than the overflow level, or keeps it anyway otherwise.
+     * This ensures that the most important events (errors by default) are never lost.
+     */
+    DROP_BELOW_LEVEL
+
+}
@@ -0,0 +1,143 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Accounting of the events accepted by the appender but not yet sent, bounded by a maximum number of events and bytes.
+ * Note that the limits are checked without locking, so they can be slightly exceeded when many threads log concurrently.
+ */
+public class PendingBudget {
+
+    private final long maxEvents;
+    private final long maxBytes;
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private volatile int waiting;
+
+    /**
+     * Creates a new budget of pending events.
+     *
+     * @param maxEvents The maximum number of pending events or {@code 0} for no limit
+     * @param maxBytes  The maximum number of pending bytes or {@code 0} for no limit
+     */
+    public PendingBudget(long maxEvents, long maxBytes) {
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Indicates if the limit of pending events or bytes is reached.
+     *
+     * @return {@code true} if no more events should be accepted, {@code false} otherwise
+     */
+    public boolean isExceeded() {
+        return (maxEvents > 0 && events.get() >= maxEvents)
+                || (maxBytes > 0 && bytes.get() >= maxBytes);
+    }
+
+    /**
+     * Accounts a new pending event, regardless of the limits.
+     */
+    public void acquire() {
+        events.incrementAndGet();
+    }
+
+    /**
+     * Waits until the limits are not reached anymore.
+     *
+     * @param timeout The maximum time to wait
+     * @return {@code true} if the limits are not reached anymore, {@code false} if the timeout is reached
+     */
+    public boolean await(Duration timeout) {
+        long remaining = timeout.toNanos();
+        lock.lock();
+        waiting++;
+        try {
+            while (isExceeded()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting--;
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Accounts bytes used by the pending events once they have been encoded.
+     *
+     * @param size The number of bytes
+     */
+    public void addBytes(long size) {
+        bytes.addAndGet(size);
+    }
+
+    /**
+     * Releases events once they are not pending anymore (sent, failed or dropped).
+     *
+     * @param count The number of events
+     * @param size  The number of bytes used by the events
+     */
+    public void release(long count, long size) {
+        events.updateAndGet(value -> Math.max(0, value - count));
+        bytes.updateAndGet(value -> Math.max(0, value - size));
+        if (waiting > 0) {
+            lock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Counts events dropped due to the limits.
+     *
+     * @param count The number of events dropped
+     */
+    public void drop(long count) {
+        dropped.add(count);
+    }
+
+    /**
+     * Gets the number of pending events.
+     *
+     * @return The number of events
+     */
+    public long getPendingEvents() {
+        return events.get();
+    }
+
+    /**
+     * Gets the number of bytes used by the pending events already encoded.
+     *
+     * @return The number of bytes
+     */
+    public long getPendingBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Gets the number of events dropped since the creation of this budget.
+     *
+     * @return The number of events
+     */
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+}
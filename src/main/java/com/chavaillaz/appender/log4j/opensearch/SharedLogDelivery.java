@@ -0,0 +1,260 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.chavaillaz.appender.LogDelivery;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Logs delivery of an appender sharing its client and delivery pipeline with the other appenders sending
+ * their logs to the same nodes with the same credentials, operation type ({@code DataStream}) and ingest pipeline. The documents of all these appenders are multiplexed
+ * into common bulks, each document keeping the index and converter of its appender.
+ * <p>
+ * The pipeline is created with the configuration of the first appender opening it (connection, batching, limits,
+ * retries, spool, compression and dead-letter handler), a warning being logged for each following appender configured
+ * differently, and closed when the last appender using it is closed. Its metrics are registered under the name of
+ * the oldest appender still using it. Its documents are always encoded directly in bulks, so that documents
+ * of different indices can be combined.
+ */
+@Log4j2
+public class SharedLogDelivery implements LogDelivery {
+
+    private static final Map<Key, Pipeline> PIPELINES = new HashMap<>();
+
+    private final OpensearchConfiguration configuration;
+    private final Key key;
+    private final Pipeline pipeline;
+    @Getter
+    private final OpensearchLogDelivery delivery;
+    private String name;
+    private boolean closed;
+    /**
+     * Indicates if the shared pipeline has been closed with this appender, being the last one using it.
+     */
+    @Getter
+    private volatile boolean pipelineClosed;
+    private Long shutdownDeadline;
+
+    /**
+     * Creates a new logs delivery using the pipeline shared by the appenders with the same nodes, credentials,
+     * operation type and ingest pipeline, creating it if this is the first appender using it.
+     *
+     * @param configuration The configuration of the appender
+     */
+    public SharedLogDelivery(OpensearchConfiguration configuration) {
+        configuration.setStreamingBulk(true);
+        this.configuration = configuration;
+        this.key = new Key(configuration.getUrl(), hashCredentials(configuration), configuration.isDataStream(),
+                isBlank(configuration.getPipeline()) ? null : configuration.getPipeline());
+        synchronized (PIPELINES) {
+            Pipeline existing = PIPELINES.get(key);
+            if (existing == null) {
+                existing = new Pipeline(new OpensearchLogDelivery(configuration), getPipelineSettings(configuration));
+                PIPELINES.put(key, existing);
+            } else {
+                warnDifferentSettings(configuration, existing.settings);
+            }
+            existing.members.add(this);
+            this.pipeline = existing;
+            this.delivery = existing.delivery;
+        }
+    }
+
+    /**
+     * Hashes the credentials of the given configuration, so that the pipelines are not kept
+     * in memory along with the passwords and API keys in clear.
+     *
+     * @param configuration The configuration of the appender
+     * @return The SHA-256 hash of the user, password and API key, in hexadecimal
+     */
+    private static String hashCredentials(OpensearchConfiguration configuration) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String credential : new String[]{configuration.getUser(), configuration.getPassword(), configuration.getApiKey()}) {
+                // Distinguishes a missing credential from an empty one, then separates it from the next one
+                digest.update((byte) (credential == null ? 0 : 1));
+                digest.update(String.valueOf(credential).getBytes(UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Gets the settings of the given configuration applying to the whole pipeline when it is shared.
+     *
+     * @param configuration The configuration of the appender
+     * @return The settings by name, in the order of the configuration
+     */
+    private static Map<String, Object> getPipelineSettings(OpensearchConfiguration configuration) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("UrlTrusted", configuration.isUrlTrusted());
+        settings.put("SniffInterval", configuration.getSniffInterval());
+        settings.put("NodeSelection", configuration.getNodeSelection());
+        settings.put("MaxConnections", configuration.getMaxConnections());
+        settings.put("MaxConnectionsPerRoute", configuration.getMaxConnectionsPerRoute());
+        settings.put("ConnectionTimeToLive", configuration.getConnectionTimeToLive());
+        settings.put("ConnectionIdleTimeout", configuration.getConnectionIdleTimeout());
+        settings.put("IoThreads", configuration.getIoThreads());
+        settings.put("ConnectTimeout", configuration.getConnectTimeout());
+        settings.put("ResponseTimeout", configuration.getResponseTimeout());
+        settings.put("FlushThreshold", configuration.getFlushThreshold());
+        settings.put("FlushInterval", configuration.getFlushInterval());
+        settings.put("FlushBytes", configuration.getFlushBytes());
+        settings.put("AdaptiveBatching", configuration.isAdaptiveBatching());
+        settings.put("MaxPendingEvents", configuration.getMaxPendingEvents());
+        settings.put("MaxPendingBytes", configuration.getMaxPendingBytes());
+        settings.put("SpoolDirectory", configuration.getSpoolDirectory());
+        settings.put("SpoolMaxSize", configuration.getSpoolMaxSize());
+        settings.put("MaxRetries", configuration.getMaxRetries());
+        settings.put("RetryInitialDelay", configuration.getRetryInitialDelay());
+        settings.put("RetryMaxDelay", configuration.getRetryMaxDelay());
+        settings.put("MaxInFlightBulks", configuration.getMaxInFlightBulks());
+        settings.put("Compression", configuration.getCompression());
+        settings.put("CompressionLevel", configuration.getCompressionLevel());
+        settings.put("DeadLetterHandler", configuration.getDeadLetterHandler() == null ? null
+                : configuration.getDeadLetterHandler().getClass().getName());
+        return settings;
+    }
+
+    /**
+     * Logs a warning listing the settings of the given configuration ignored because they differ
+     * from the ones of the existing pipeline.
+     *
+     * @param configuration The configuration of the appender joining the pipeline
+     * @param settings      The settings of the pipeline
+     */
+    private static void warnDifferentSettings(OpensearchConfiguration configuration, Map<String, Object> settings) {
+        List<String> different = new ArrayList<>();
+        getPipelineSettings(configuration).forEach((setting, value) -> {
+            if (!Objects.equals(value, settings.get(setting))) {
+                different.add(setting + "=" + value + " (shared: " + settings.get(setting) + ")");
+            }
+        });
+        if (!different.isEmpty()) {
+            log.warn("Settings ignored for the delivery pipeline shared with {}: {}", configuration.getUrl(), different);
+        }
+    }
+
+    /**
+     * Registers the metrics of the shared pipeline under the given name, unless they are already registered
+     * under the name of another appender using it, in which case they are registered under this name
+     * once all the appenders that joined the pipeline before this one are closed.
+     *
+     * @param name The name of the appender
+     */
+    public void registerMetrics(String name) {
+        synchronized (PIPELINES) {
+            this.name = name;
+            if (pipeline.owner == null) {
+                pipeline.owner = this;
+                delivery.getMetrics().register(name, configuration.isJmxMetrics(), configuration.isMicrometerMetrics());
+            }
+        }
+    }
+
+    @Override
+    public void send(Map<String, Object> document) {
+        delivery.send(document, configuration);
+    }
+
+    @Override
+    public void send(List<Map<String, Object>> documents) {
+        delivery.send(documents, configuration);
+    }
+
+    @Override
+    public void flush() {
+        delivery.flush();
+    }
+
+    /**
+     * Sets the time by which the shared pipeline must be closed if this appender is the last one using it.
+     *
+     * @param deadline The deadline, as given by {@link System#nanoTime()}
+     * @see OpensearchLogDelivery#setShutdownDeadline(long)
+     */
+    public void setShutdownDeadline(long deadline) {
+        this.shutdownDeadline = deadline;
+    }
+
+    /**
+     * Releases the shared pipeline, which is closed if no other appender is using it,
+     * or flushed otherwise in order to send the documents of this appender.
+     *
+     * @throws Exception If the pipeline cannot be closed
+     */
+    @Override
+    public void close() throws Exception {
+        boolean last;
+        synchronized (PIPELINES) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pipeline.members.remove(this);
+            last = pipeline.members.isEmpty();
+            if (last) {
+                PIPELINES.remove(key);
+            } else if (pipeline.owner == this) {
+                transferMetrics();
+            }
+        }
+        pipelineClosed = last;
+        if (last) {
+            if (shutdownDeadline != null) {
+                delivery.setShutdownDeadline(shutdownDeadline);
+            }
+            delivery.close();
+        } else {
+            delivery.flush();
+        }
+    }
+
+    /**
+     * Registers the metrics of the pipeline under the name of the oldest appender still using it,
+     * so that they do not remain under the name of this appender once closed.
+     */
+    private void transferMetrics() {
+        pipeline.owner = null;
+        delivery.getMetrics().unregister();
+        for (SharedLogDelivery member : pipeline.members) {
+            if (member.name != null) {
+                member.registerMetrics(member.name);
+                break;
+            }
+        }
+    }
+
+    private record Key(String url, String credentials, boolean dataStream, String pipeline) {
+    }
+
+    private static class Pipeline {
+
+        private final OpensearchLogDelivery delivery;
+        private final Map<String, Object> settings;
+        private final List<SharedLogDelivery> members = new ArrayList<>();
+        private SharedLogDelivery owner;
+
+        private Pipeline(OpensearchLogDelivery delivery, Map<String, Object> settings) {
+            this.delivery = delivery;
+            this.settings = settings;
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.hc.core5.http.HttpHost;
+import org.opensearch.client.json.JsonpMapper;
+import org.opensearch.client.opensearch.generic.OpenSearchGenericClient;
+import org.opensearch.client.opensearch.generic.Requests;
+import org.opensearch.client.opensearch.generic.Response;
+import org.opensearch.client.transport.Endpoint;
+import org.opensearch.client.transport.OpenSearchTransport;
+import org.opensearch.client.transport.TransportOptions;
+import org.opensearch.client.transport.httpclient5.internal.Node;
+
+/**
+ * Transport discovering periodically the nodes of the cluster with the nodes info API ({@code _nodes/http}),
+ * in order to spread the requests across all of them instead of only the ones configured.
+ * <p>
+ * Requests are given to an underlying transport balancing them across its nodes in a round-robin fashion
+ * and excluding for an increasing time the nodes failing. When the nodes discovered change, the underlying transport
+ * is replaced by one for the new nodes, sharing the same HTTP client (connection pool and I/O reactor), so that
+ * the requests in progress complete normally and the connections to the nodes still present are kept.
+ */
+@Log4j2
+public class SniffingTransport implements OpenSearchTransport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Function<List<Node>, OpenSearchTransport> factory;
+    private final String scheme;
+    private final ScheduledExecutorService sniffer;
+    private volatile OpenSearchTransport delegate;
+    @Getter
+    private volatile List<Node> nodes;
+
+    /**
+     * Creates a new transport discovering the nodes of the cluster.
+     *
+     * @param nodes         The nodes configured, used until other nodes are discovered
+     * @param factory       The factory creating an underlying transport for the given nodes, all the transports
+     *                      created sharing the same HTTP client (closed with the last transport only)
+     * @param interval      The time between two discoveries of the nodes
+     * @param threadFactory The factory of the thread discovering the nodes
+     */
+    public SniffingTransport(List<Node> nodes, Function<List<Node>, OpenSearchTransport> factory, Duration interval, ThreadFactory threadFactory) {
+        this.factory = factory;
+        this.scheme = nodes.get(0).getHost().getSchemeName();
+        this.nodes = List.copyOf(nodes);
+        this.delegate = factory.apply(this.nodes);
+        this.sniffer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.sniffer.scheduleWithFixedDelay(this::sniff, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Discovers the nodes of the cluster and replaces the underlying transport if they changed.
+     * The nodes configured are kept when no node can be discovered. Note that the previous transport
+     * is not closed, as it would close the HTTP client shared with the new one.
+     */
+    protected synchronized void sniff() {
+        try {
+            List<Node> sniffed = sniffNodes();
+            if (!sniffed.isEmpty() && !hosts(sniffed).equals(hosts(nodes))) {
+                log.debug("Nodes discovered: {}", sniffed);
+                delegate = factory.apply(sniffed);
+                nodes = List.copyOf(sniffed);
+            }
+        } catch (Exception e) {
+            log.debug("Unable to discover nodes: {}", e.getMessage());
+        }
+    }
+
+    private List<Node> sniffNodes() throws IOException {
+        try (Response response = new OpenSearchGenericClient(delegate).execute(Requests.builder()
+                .method("GET")
+                .endpoint("/_nodes/http")
+                .build())) {
+            if (response.getStatus() >= 300) {
+                throw new IOException("Nodes info refused with status " + response.getStatus());
+            }
+            try (InputStream body = response.getBody().orElseThrow().body()) {
+                return readNodes(scheme, MAPPER.readTree(body));
+            }
+        }
+    }
+
+    /**
+     * Reads the nodes from the response of the nodes info API, ignoring the nodes without HTTP enabled.
+     *
+     * @param scheme The scheme to use to reach the nodes
+     * @param root   The response of the nodes info API
+     * @return The nodes with their roles
+     */
+    static List<Node> readNodes(String scheme, JsonNode root) {
+        List<Node> nodes = new ArrayList<>();
+        for (JsonNode node : root.path("nodes")) {
+            String address = node.path("http").path("publish_address").asText(null);
+            if (address == null) {
+                continue;
+            }
+            Set<String> roles = new HashSet<>();
+            node.path("roles").forEach(role -> roles.add(role.asText()));
+            nodes.add(new Node(toHost(scheme, address), null,
+                    node.path("name").asText(null),
+                    node.path("version").asText(null),
+                    new Node.Roles(roles),
+                    null));
+        }
+        return nodes;
+    }
+
+    /**
+     * Converts a publish address of the nodes info API, in the format {@code host/ip:port} or {@code ip:port},
+     * into an HTTP host. The host name is preferred to the IP address when present.
+     *
+     * @param scheme  The scheme to use to reach the node
+     * @param address The publish address
+     * @return The HTTP host
+     */
+    static HttpHost toHost(String scheme, String address) {
+        int separator = address.lastIndexOf(':');
+        int slash = address.indexOf('/');
+        String host = slash > 0 ? address.substring(0, slash) : address.substring(0, separator);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return new HttpHost(scheme, host, Integer.parseInt(address.substring(separator + 1)));
+    }
+
+    private static Set<HttpHost> hosts(List<Node> nodes) {
+        Set<HttpHost> hosts = new HashSet<>();
+        nodes.forEach(node -> hosts.add(node.getHost()));
+        return hosts;
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> ResponseT performRequest(RequestT request, Endpoint<RequestT, ResponseT, ErrorT> endpoint, TransportOptions options) throws IOException {
+        return delegate.performRequest(request, endpoint, options);
+    }
+
+    @Override
+    public <RequestT, ResponseT, ErrorT> CompletableFuture<ResponseT> performRequestAsync(RequestT request, Endpoint<RequestT, ResponseT, ErrorT> endpoint, TransportOptions options) {
+        return delegate.performRequestAsync(request, endpoint, options);
+    }
+
+    @Override
+    public JsonpMapper jsonpMapper() {
+        return delegate.jsonpMapper();
+    }
+
+    @Override
+    public TransportOptions options() {
+        return delegate.options();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sniffer.shutdownNow();
+        delegate.close();
+    }
+
+}
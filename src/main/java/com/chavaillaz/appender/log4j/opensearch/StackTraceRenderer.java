@@ -0,0 +1,200 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Renderer of stack traces in the same format as {@link Throwable#printStackTrace()}, keeping the last ones rendered
+ * in a cache of bounded size, so that an exception repeated many times only costs a lookup instead of a full rendering.
+ * <p>
+ * The cache is keyed by the structure of the throwable (type, message and frames of the throwable, its causes
+ * and suppressed throwables), so that two instances thrown at the same place with the same message share the same
+ * rendering. As for {@link Throwable#printStackTrace()}, the frames of the causes in common with their enclosing
+ * throwable are trimmed, and the number of frames rendered for each throwable can be limited.
+ */
+public class StackTraceRenderer {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int maxDepth;
+    private final boolean hash;
+    private final Map<Node, RenderedStackTrace> cache;
+
+    /**
+     * Creates a new renderer of stack traces.
+     *
+     * @param cacheSize The maximum number of stack traces kept in the cache or {@code 0} to disable it
+     * @param maxDepth  The maximum number of frames rendered for each throwable or {@code 0} for no limit
+     * @param hash      {@code true} to compute the hash of each stack trace, {@code false} otherwise
+     */
+    public StackTraceRenderer(int cacheSize, int maxDepth, boolean hash) {
+        this.maxDepth = maxDepth;
+        this.hash = hash;
+        this.cache = cacheSize > 0 ? new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Node, RenderedStackTrace> eldest) {
+                return size() > cacheSize;
+            }
+        } : null;
+    }
+
+    /**
+     * Renders the stack trace of the given throwable, or gets it from the cache if a throwable
+     * with the same structure has already been rendered.
+     *
+     * @param throwable The throwable to render
+     * @return The stack trace rendered
+     */
+    public RenderedStackTrace render(Throwable throwable) {
+        Node node = Node.of(throwable, Collections.newSetFromMap(new IdentityHashMap<>()));
+        if (cache == null) {
+            return render(node);
+        }
+        synchronized (cache) {
+            RenderedStackTrace rendered = cache.get(node);
+            if (rendered != null) {
+                return rendered;
+            }
+        }
+        RenderedStackTrace rendered = render(node);
+        synchronized (cache) {
+            cache.put(node, rendered);
+        }
+        return rendered;
+    }
+
+    private RenderedStackTrace render(Node node) {
+        StringBuilder text = new StringBuilder(1024);
+        render(text, node, new StackTraceElement[0], "", "");
+        return new RenderedStackTrace(text.toString(), hash ? Long.toHexString(hash(FNV_OFFSET, node)) : null);
+    }
+
+    private void render(StringBuilder text, Node node, StackTraceElement[] enclosing, String caption, String prefix) {
+        text.append(prefix).append(caption).append(node.description).append(System.lineSeparator());
+        if (node.circular) {
+            return;
+        }
+
+        StackTraceElement[] frames = node.frames;
+        int last = frames.length - 1;
+        for (int other = enclosing.length - 1; last >= 0 && other >= 0 && frames[last].equals(enclosing[other]); other--) {
+            last--;
+        }
+        int common = frames.length - 1 - last;
+        int rendered = maxDepth > 0 ? Math.min(last + 1, maxDepth) : last + 1;
+        for (int i = 0; i < rendered; i++) {
+            text.append(prefix).append("\tat ").append(frames[i]).append(System.lineSeparator());
+        }
+        if (rendered < last + 1) {
+            text.append(prefix).append("\t... ").append(last + 1 - rendered).append(" frames truncated").append(System.lineSeparator());
+        }
+        if (common > 0) {
+            text.append(prefix).append("\t... ").append(common).append(" more").append(System.lineSeparator());
+        }
+        for (Node suppressed : node.suppressed) {
+            render(text, suppressed, frames, "Suppressed: ", prefix + "\t");
+        }
+        if (node.cause != null) {
+            render(text, node.cause, frames, "Caused by: ", prefix);
+        }
+    }
+
+    /**
+     * Computes a hash of the types and frames of the throwables, ignoring their messages, so that it stays the same
+     * for a given exception thrown at a given place, across all the instances of the application.
+     */
+    private static long hash(long hash, Node node) {
+        hash = hash(hash, node.type);
+        for (StackTraceElement frame : node.frames) {
+            hash = hash(hash, frame.getClassName());
+            hash = hash(hash, frame.getMethodName());
+            hash = hash(hash, frame.getFileName());
+            hash = (hash ^ frame.getLineNumber()) * FNV_PRIME;
+        }
+        for (Node suppressed : node.suppressed) {
+            hash = hash(hash, suppressed);
+        }
+        return node.cause != null ? hash(hash, node.cause) : hash;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return hash * FNV_PRIME;
+    }
+
+    /**
+     * Stack trace rendered.
+     *
+     * @param text The stack trace in the format of {@link Throwable#printStackTrace()}
+     * @param hash The hash of the types and frames of the throwables or {@code null} if not computed
+     */
+    public record RenderedStackTrace(String text, String hash) {
+    }
+
+    /**
+     * Structure of a throwable, used as key of the cache.
+     */
+    private static final class Node {
+
+        private static final Node[] NONE = new Node[0];
+
+        private final String type;
+        private final String description;
+        private final StackTraceElement[] frames;
+        private final Node cause;
+        private final Node[] suppressed;
+        private final boolean circular;
+        private final int hashCode;
+
+        private Node(Throwable throwable, String description, StackTraceElement[] frames, Node cause, Node[] suppressed, boolean circular) {
+            this.type = throwable.getClass().getName();
+            this.description = description;
+            this.frames = frames;
+            this.cause = cause;
+            this.suppressed = suppressed;
+            this.circular = circular;
+            this.hashCode = Objects.hash(description, Arrays.hashCode(frames), cause, Arrays.hashCode(suppressed), circular);
+        }
+
+        static Node of(Throwable throwable, Set<Throwable> visited) {
+            if (!visited.add(throwable)) {
+                return new Node(throwable, "[CIRCULAR REFERENCE: " + throwable + "]", new StackTraceElement[0], null, NONE, true);
+            }
+            Throwable[] suppressedThrowables = throwable.getSuppressed();
+            Node[] suppressed = suppressedThrowables.length == 0 ? NONE : new Node[suppressedThrowables.length];
+            for (int i = 0; i < suppressed.length; i++) {
+                suppressed[i] = of(suppressedThrowables[i], visited);
+            }
+            Node cause = throwable.getCause() != null ? of(throwable.getCause(), visited) : null;
+            return new Node(throwable, throwable.toString(), throwable.getStackTrace(), cause, suppressed, false);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Node node
+                    && hashCode == node.hashCode
+                    && circular == node.circular
+                    && description.equals(node.description)
+                    && Arrays.equals(frames, node.frames)
+                    && Objects.equals(cause, node.cause)
+                    && Arrays.equals(suppressed, node.suppressed);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+}
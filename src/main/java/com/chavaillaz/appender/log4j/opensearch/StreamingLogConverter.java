@@ -0,0 +1,29 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.io.IOException;
+
+import com.chavaillaz.appender.log4j.LogConverter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.logging.log4j.core.LogEvent;
+
+/**
+ * Converter able to write logging events directly with a streaming generator,
+ * without building an intermediate document for each of them.
+ * <p>
+ * When such a converter is configured with {@link OpensearchConfiguration#isStreamingBulk()},
+ * events are encoded on the logging thread, so that mutable events reused by Log4j
+ * (garbage-free mode) never need to be copied.
+ */
+public interface StreamingLogConverter extends LogConverter {
+
+    /**
+     * Writes the given logging event as a JSON object.
+     * Note that the event may be reused by Log4j after this call and must therefore not be retained.
+     *
+     * @param event     The logging event to write
+     * @param generator The generator in which to write the document
+     * @throws IOException If the document cannot be written
+     */
+    void write(LogEvent event, JsonGenerator generator) throws IOException;
+
+}
@@ -0,0 +1,58 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting the rate of events, refilled continuously and holding at most one second of tokens.
+ * <p>
+ * Instead of counting the tokens left, the bucket keeps the theoretical time at which the next token would be taken
+ * if the events arrived exactly at the allowed rate, which can be updated with a single compare-and-set
+ * and therefore without locking the logging threads.
+ */
+public class TokenBucket {
+
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * Creates a new token bucket, initially full.
+     *
+     * @param rate The number of tokens per second, which is also the capacity of the bucket
+     */
+    public TokenBucket(long rate) {
+        this.interval = Math.max(1, TimeUnit.SECONDS.toNanos(1) / rate);
+        this.tolerance = interval * (rate - 1);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token from the bucket if there is one left.
+     *
+     * @return {@code true} if a token has been taken, {@code false} if the rate is exceeded
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Takes a token from the bucket at the given time if there is one left.
+     *
+     * @param now The current time in nanoseconds
+     * @return {@code true} if a token has been taken, {@code false} if the rate is exceeded
+     */
+    boolean tryAcquire(long now) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            if (arrival - now > tolerance) {
+                return false;
+            }
+            long next = (arrival - now > 0 ? arrival : now) + interval;
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategies used by the threads of a {@link LogEventRingBuffer} when they have to wait,
+ * either the consumer for new events or the producers for free slots.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Parks the waiting thread, which is woken up when new events are published.
+     * This is the strategy using the less CPU, at the cost of a higher latency.
+     */
+    BLOCKING {
+        @Override
+        void await(int attempts) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+    },
+
+    /**
+     * Spins for a few iterations then yields the waiting thread, letting other threads run.
+     * This is a compromise between latency and CPU usage.
+     */
+    YIELDING {
+        @Override
+        void await(int attempts) {
+            if (attempts < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    },
+
+    /**
+     * Spins continuously while waiting, giving the lowest latency but fully using a CPU core.
+     * Only suitable when the number of threads is lower than the number of available cores.
+     */
+    BUSY_SPIN {
+        @Override
+        void await(int attempts) {
+            Thread.onSpinWait();
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final long PARK_NANOS = 1_000_000L;
+
+    /**
+     * Waits a short moment before checking again the condition the thread is waiting for.
+     *
+     * @param attempts The number of times the thread already waited for the same condition
+     */
+    abstract void await(int attempts);
+
+    /**
+     * Indicates if the waiting threads need to be woken up explicitly.
+     *
+     * @return {@code true} if threads are parked while waiting, {@code false} otherwise
+     */
+    boolean isSignalled() {
+        return this == BLOCKING;
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveBatchSizeTest {
+
+    @Test
+    void testGrowWhenFastAndFull() {
+        // Given
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(100, 10, 1000, Duration.ofMillis(200));
+
+        // When
+        batchSize.onResponse(50, 100, false);
+        batchSize.onResponse(50, 10, false);
+
+        // Then
+        assertThat(batchSize.getSize()).isEqualTo(110);
+    }
+
+    @Test
+    void testShrinkWhenSlowOrRejected() {
+        // Given
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(100, 10, 1000, Duration.ofMillis(200));
+
+        // When
+        batchSize.onResponse(500, 100, false);
+        batchSize.onResponse(50, 75, true);
+
+        // Then
+        assertThat(batchSize.getSize()).isEqualTo(37);
+    }
+
+    @Test
+    void testBounds() {
+        // Given
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(5000, 10, 1000, Duration.ofMillis(200));
+
+        // When
+        batchSize.onResponse(50, 5000, false);
+        int max = batchSize.getSize();
+        for (int i = 0; i < 20; i++) {
+            batchSize.onRejected();
+        }
+
+        // Then
+        assertThat(max).isEqualTo(1000);
+        assertThat(batchSize.getSize()).isEqualTo(10);
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.Test;
+
+class BulkCompressorTest {
+
+    private static BulkBuffer createBulk() throws Exception {
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        BulkBuffer bulk = new BulkBuffer(1024);
+        for (int i = 0; i < 100; i++) {
+            encoder.writeIndexOperation(bulk, "idx", Map.of("logmessage", "Message number " + i));
+        }
+        return bulk;
+    }
+
+    @Test
+    void testGzipCompression() throws Exception {
+        // Given
+        BulkBuffer bulk = createBulk();
+        BulkBuffer compressed = new BulkBuffer(1024);
+
+        // When
+        new BulkCompressor(Compression.GZIP, 1).compress(bulk, compressed);
+
+        // Then
+        assertThat(compressed.size()).isLessThan(bulk.size() / 4);
+        try (InputStream input = new GZIPInputStream(compressed.toInputStream())) {
+            assertThat(new String(input.readAllBytes(), UTF_8)).isEqualTo(bulk.toString(UTF_8));
+        }
+    }
+
+    @Test
+    void testDeflateCompressionWithReusedDeflater() throws Exception {
+        // Given
+        BulkBuffer bulk = createBulk();
+        BulkCompressor compressor = new BulkCompressor(Compression.DEFLATE, 9);
+        BulkBuffer compressed = new BulkBuffer(1024);
+        compressor.compress(bulk, compressed);
+        compressed.reset();
+
+        // When
+        compressor.compress(bulk, compressed);
+
+        // Then
+        try (InputStream input = new InflaterInputStream(compressed.toInputStream())) {
+            assertThat(new String(input.readAllBytes(), UTF_8)).isEqualTo(bulk.toString(UTF_8));
+        }
+    }
+
+}
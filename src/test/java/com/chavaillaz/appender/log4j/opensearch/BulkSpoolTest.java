@@ -0,0 +1,114 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class BulkSpoolTest {
+
+    private static final OpensearchBulkEncoder ENCODER = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+
+    private static BulkBuffer bulk(String message, int documents) throws Exception {
+        BulkBuffer buffer = new BulkBuffer(64);
+        for (int i = 0; i < documents; i++) {
+            ENCODER.writeIndexOperation(buffer, "idx", Map.of("logmessage", message));
+        }
+        return buffer;
+    }
+
+    @Test
+    void testAppendAndReplayInOrder() throws Exception {
+        // Given
+        Path directory = Files.createTempDirectory("spool");
+        BulkBuffer target = new BulkBuffer(64);
+
+        // When
+        try (BulkSpool spool = new BulkSpool(directory, 4096, 256)) {
+            for (int i = 0; i < 5; i++) {
+                assertThat(spool.append(bulk("message-" + i, 2))).isTrue();
+            }
+
+            // Then
+            for (int i = 0; i < 5; i++) {
+                assertThat(spool.peek(target)).isTrue();
+                assertThat(target.getDocuments()).isEqualTo(2);
+                assertThat(target.toString(UTF_8)).contains("message-" + i);
+                spool.commit();
+            }
+            assertThat(spool.peek(target)).isFalse();
+            assertThat(spool.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    void testPeekWithoutCommit() throws Exception {
+        // Given
+        Path directory = Files.createTempDirectory("spool");
+        BulkBuffer target = new BulkBuffer(64);
+
+        try (BulkSpool spool = new BulkSpool(directory, 4096, 256)) {
+            spool.append(bulk("first", 1));
+            spool.append(bulk("second", 1));
+
+            // When
+            spool.peek(target);
+            spool.peek(target);
+
+            // Then
+            assertThat(target.toString(UTF_8)).contains("first");
+        }
+    }
+
+    @Test
+    void testRecoverAfterReopen() throws Exception {
+        // Given
+        Path directory = Files.createTempDirectory("spool");
+        BulkBuffer target = new BulkBuffer(64);
+        try (BulkSpool spool = new BulkSpool(directory, 4096, 256)) {
+            for (int i = 0; i < 5; i++) {
+                spool.append(bulk("message-" + i, 1));
+            }
+            spool.peek(target);
+            spool.commit();
+        }
+
+        // When
+        try (BulkSpool spool = new BulkSpool(directory, 4096, 256)) {
+            spool.append(bulk("message-5", 1));
+
+            // Then
+            for (int i = 1; i < 6; i++) {
+                assertThat(spool.peek(target)).isTrue();
+                assertThat(target.toString(UTF_8)).contains("message-" + i);
+                spool.commit();
+            }
+            assertThat(spool.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    void testMaxSizeReached() throws Exception {
+        // Given
+        Path directory = Files.createTempDirectory("spool");
+
+        try (BulkSpool spool = new BulkSpool(directory, 512, 256)) {
+            // When
+            int appended = 0;
+            while (spool.append(bulk("message", 1))) {
+                appended++;
+            }
+
+            // Then
+            assertThat(appended).isPositive();
+            assertThat(spool.getSize()).isLessThanOrEqualTo(512);
+            assertThat(spool.append(bulk("too large", 10))).isFalse();
+        }
+    }
+
+}
@@ -0,0 +1,422 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server standing in for the bulk endpoint of OpenSearch, in order to test and measure the delivery
+ * without a cluster.
+ * <p>
+ * Without faults, bulk requests are answered immediately with a successful response without reading them,
+ * in order to measure the client side of the transmissions only. With faults, the NDJSON operations are parsed,
+ * the documents accepted are recorded with their time of reception, and the faults are injected according
+ * to a random generator seeded with the sequence number of each request, so that the n-th request always gets
+ * the same faults whatever the scheduling of the threads handling them. The documents refused permanently
+ * are recorded as well, in order to check that each of them has been dead-lettered. As with data streams,
+ * create operations with an identifier already indexed are refused with a conflict.
+ * <p>
+ * When {@link #scripted(StubResponse...) scripted}, all the requests are recorded and answered with the responses
+ * given, in order, and then with the {@link #setDefaultResponse(StubResponse) default response}, which accepts
+ * all the documents unless set otherwise.
+ */
+public class BulkStubServer implements AutoCloseable {
+
+    private static final byte[] RESPONSE = "{\"took\":1,\"errors\":false,\"items\":[]}".getBytes(UTF_8);
+    private static final byte[] THROTTLED = """
+            {"error":{"type":"es_rejected_execution_exception","reason":"injected"},"status":429}"""
+            .getBytes(UTF_8);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long SEED = 42;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Faults faults;
+    private final AtomicLong bulks = new AtomicLong();
+    private final Queue<StubResponse> responses = new ConcurrentLinkedQueue<>();
+    private final List<ReceivedRequest> requests = new CopyOnWriteArrayList<>();
+    private volatile StubResponse defaultResponse;
+    private final List<IndexedDocument> documents = new CopyOnWriteArrayList<>();
+    private final List<String> rejectedDocuments = new CopyOnWriteArrayList<>();
+    private final Set<String> identifiers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates and starts a new stub server on a free local port, accepting all bulk requests.
+     *
+     * @throws IOException If the server cannot be started
+     */
+    public BulkStubServer() throws IOException {
+        this(null);
+    }
+
+    /**
+     * Creates and starts a new stub server on a free local port, injecting the given faults.
+     *
+     * @param faults The faults to inject or {@code null} to accept all bulk requests without reading them
+     * @throws IOException If the server cannot be started
+     */
+    public BulkStubServer(Faults faults) throws IOException {
+        this(faults, false);
+    }
+
+    private BulkStubServer(Faults faults, boolean scripted) throws IOException {
+        this.faults = faults;
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(executor);
+        if (scripted) {
+            this.server.createContext("/", this::handleScripted);
+        } else {
+            this.server.createContext("/_bulk", faults == null ? this::handle : this::handleWithFaults);
+        }
+        this.server.start();
+    }
+
+    /**
+     * Creates and starts a new stub server on a free local port, recording all the requests received
+     * and answering them with the given responses, in order, then with the default response.
+     *
+     * @param responses The responses to give to the first requests
+     * @return The server started
+     * @throws IOException If the server cannot be started
+     */
+    public static BulkStubServer scripted(StubResponse... responses) throws IOException {
+        BulkStubServer server = new BulkStubServer(null, true);
+        server.script(responses);
+        return server;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        respond(exchange, 200, RESPONSE);
+    }
+
+    private void handleScripted(HttpExchange exchange) throws IOException {
+        String body = readBody(exchange);
+        requests.add(new ReceivedRequest(
+                exchange.getRequestMethod(),
+                exchange.getRequestURI().getPath(),
+                exchange.getRequestURI().getQuery(),
+                exchange.getRequestHeaders().getFirst("Content-Encoding"),
+                body));
+        StubResponse response = responses.poll();
+        if (response == null) {
+            response = defaultResponse != null ? defaultResponse : StubResponse.accepted();
+        }
+        if (response.action() != null) {
+            response.action().run();
+        }
+        if (response.status() < 0) {
+            respond(exchange, 200, createAcceptedResponse(body).getBytes(UTF_8));
+        } else if (response.status() == 0) {
+            // Closing the exchange before sending the response headers aborts the connection
+            exchange.close();
+        } else {
+            respond(exchange, response.status(), response.body().getBytes(UTF_8));
+        }
+    }
+
+    private static String createAcceptedResponse(String body) throws IOException {
+        List<String> lines = body.lines().filter(line -> !line.isBlank()).toList();
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i + 1 < lines.size(); i += 2) {
+            JsonNode action = MAPPER.readTree(lines.get(i));
+            String operation = action.fieldNames().next();
+            String index = action.get(operation).path("_index").asText();
+            items.append(items.isEmpty() ? "" : ",").append(createItem(operation, index, String.valueOf(i / 2), 201));
+        }
+        return "{\"took\":1,\"errors\":false,\"items\":[" + items + "]}";
+    }
+
+    private void handleWithFaults(HttpExchange exchange) throws IOException {
+        SplittableRandom random = new SplittableRandom(SEED + bulks.incrementAndGet());
+        List<String> lines = readBody(exchange).lines().filter(line -> !line.isBlank()).toList();
+        if (!faults.latency().isZero()) {
+            sleep(faults.latency());
+        }
+        if (draw(random, faults.resetConnections())) {
+            // Closing the exchange before sending the response headers aborts the connection
+            exchange.close();
+            return;
+        }
+        if (draw(random, faults.throttledBulks())) {
+            respond(exchange, 429, THROTTLED);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean errors = false;
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i + 1 < lines.size(); i += 2) {
+            JsonNode action = MAPPER.readTree(lines.get(i));
+            String operation = action.fieldNames().next();
+            String index = action.get(operation).path("_index").asText();
+            String id = action.get(operation).path("_id").asText(null);
+            int status = 201;
+            if (draw(random, faults.retryableItems())) {
+                status = 429;
+            } else if (draw(random, faults.rejectedItems())) {
+                status = 400;
+                rejectedDocuments.add(lines.get(i + 1));
+            } else if (id != null && operation.equals("create") && !identifiers.add(id)) {
+                status = 409;
+            } else {
+                documents.add(new IndexedDocument(lines.get(i + 1), now));
+            }
+            errors |= status != 201;
+            items.append(items.isEmpty() ? "" : ",").append(createItem(operation, index, id, status));
+        }
+        respond(exchange, 200, ("{\"took\":1,\"errors\":" + errors + ",\"items\":[" + items + "]}").getBytes(UTF_8));
+    }
+
+    /**
+     * Reads the body of the given request, decompressed according to its encoding.
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        try (InputStream body = decode(exchange.getRequestBody(), encoding)) {
+            return new String(body.readAllBytes(), UTF_8);
+        }
+    }
+
+    private static InputStream decode(InputStream body, String encoding) throws IOException {
+        if ("gzip".equals(encoding)) {
+            return new GZIPInputStream(body);
+        } else if ("deflate".equals(encoding)) {
+            return new InflaterInputStream(body);
+        }
+        return body;
+    }
+
+    private static String createItem(String operation, String index, String id, int status) {
+        String error = switch (status) {
+            case 429 -> ",\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"injected\"}";
+            case 400 -> ",\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"injected\"}";
+            case 409 -> ",\"error\":{\"type\":\"version_conflict_engine_exception\",\"reason\":\"document already exists\"}";
+            default -> "";
+        };
+        return "{\"" + operation + "\":{\"_index\":\"" + index + "\",\"_id\":\"" + (id != null ? id : "0")
+                + "\",\"status\":" + status + error + "}}";
+    }
+
+    private static boolean draw(SplittableRandom random, double probability) {
+        return probability > 0 && random.nextDouble() < probability;
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] response) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, response.length);
+        exchange.getResponseBody().write(response);
+        exchange.close();
+    }
+
+    /**
+     * Adds responses to give to the next requests, once the ones already scripted have been given.
+     *
+     * @param responses The responses to give
+     */
+    public void script(StubResponse... responses) {
+        this.responses.addAll(List.of(responses));
+    }
+
+    /**
+     * Sets the response to give once all the scripted responses have been given.
+     *
+     * @param response The response to give or {@code null} to accept all the documents of the bulk requests
+     */
+    public void setDefaultResponse(StubResponse response) {
+        this.defaultResponse = response;
+    }
+
+    /**
+     * Gets the requests received (only recorded when scripted).
+     *
+     * @return The requests received, in their order of reception
+     */
+    public List<ReceivedRequest> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Gets the bodies of the requests received (only recorded when scripted).
+     *
+     * @return The bodies decompressed, in their order of reception
+     */
+    public List<String> getBodies() {
+        return requests.stream().map(ReceivedRequest::body).toList();
+    }
+
+    /**
+     * Gets the URL of the server.
+     *
+     * @return The URL in the format {@code http://host:port}
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the number of bulk requests received (only counted when faults are injected).
+     *
+     * @return The number of bulk requests
+     */
+    public long getBulks() {
+        return bulks.get();
+    }
+
+    /**
+     * Gets the documents accepted (only recorded when faults are injected).
+     *
+     * @return The documents accepted, in their order of reception
+     */
+    public List<IndexedDocument> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Gets the documents refused permanently with the status 400 (only recorded when faults are injected).
+     *
+     * @return The sources of the documents refused, in their order of reception
+     */
+    public List<String> getRejectedDocuments() {
+        return rejectedDocuments;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Faults injected by the server.
+     *
+     * @param latency          The time waited before answering each bulk request
+     * @param resetConnections The probability of closing the connection without response
+     * @param throttledBulks   The probability of refusing a whole bulk with the status 429
+     * @param retryableItems   The probability of refusing a document with the status 429
+     * @param rejectedItems    The probability of refusing a document with the status 400
+     */
+    public record Faults(Duration latency, double resetConnections, double throttledBulks, double retryableItems, double rejectedItems) {
+
+        /**
+         * No faults injected, but the documents are still parsed and recorded.
+         */
+        public static final Faults NONE = new Faults(Duration.ZERO, 0, 0, 0, 0);
+
+    }
+
+    /**
+     * Response given to a request by a scripted server.
+     *
+     * @param status The HTTP status, {@code 0} to close the connection without response
+     *               or a negative value to accept all the documents
+     * @param body   The body in JSON format
+     * @param action The action to run before responding (for instance to wait) or {@code null}
+     */
+    public record StubResponse(int status, String body, Runnable action) {
+
+        /**
+         * Creates a response with the given status and body.
+         *
+         * @param status The HTTP status
+         * @param body   The body in JSON format
+         * @return The response
+         */
+        public static StubResponse of(int status, String body) {
+            return new StubResponse(status, body, null);
+        }
+
+        /**
+         * Creates a successful response with the given body.
+         *
+         * @param body The body of the bulk response in JSON format
+         * @return The response
+         */
+        public static StubResponse ok(String body) {
+            return of(200, body);
+        }
+
+        /**
+         * Creates a response closing the connection without answering.
+         *
+         * @return The response
+         */
+        public static StubResponse reset() {
+            return of(0, null);
+        }
+
+        /**
+         * Creates a response accepting all the documents, as given when no response is scripted.
+         *
+         * @return The response
+         */
+        public static StubResponse accepted() {
+            return new StubResponse(-1, null, null);
+        }
+
+        /**
+         * Runs the given action before giving this response.
+         *
+         * @param action The action to run, for instance waiting for a latch
+         * @return The response running the action
+         */
+        public StubResponse beforeResponding(Runnable action) {
+            return new StubResponse(status, body, action);
+        }
+
+    }
+
+    /**
+     * Request received by a scripted server.
+     *
+     * @param method   The HTTP method
+     * @param path     The path
+     * @param query    The query string or {@code null} if none
+     * @param encoding The content encoding or {@code null} if not compressed
+     * @param body     The body decompressed
+     */
+    public record ReceivedRequest(String method, String path, String query, String encoding, String body) {
+    }
+
+    /**
+     * Document accepted by the server.
+     *
+     * @param source The source of the document in JSON format
+     * @param time   The time of reception in milliseconds since the epoch
+     */
+    public record IndexedDocument(String source, long time) {
+    }
+
+}
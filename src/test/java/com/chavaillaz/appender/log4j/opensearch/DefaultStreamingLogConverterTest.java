@@ -0,0 +1,235 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.logging.log4j.Level.WARN;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.junit.jupiter.api.Test;
+
+class DefaultStreamingLogConverterTest {
+
+    protected static OpensearchConfiguration createConfiguration() {
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setApplication("my-application");
+        configuration.setHost("my-host");
+        configuration.setEnvironment("my-environment");
+        configuration.setIndex("idx");
+        configuration.setConverter(DefaultStreamingLogConverter.class.getName());
+        return configuration;
+    }
+
+    protected static LogEvent createEvent() {
+        SortedArrayStringMap context = new SortedArrayStringMap();
+        context.putValue("key", "value");
+        return Log4jLogEvent.newBuilder()
+                .setLoggerFqcn("my.logger")
+                .setLevel(WARN)
+                .setThreadName("my-thread")
+                .setTimeMillis(1_700_000_000_123L)
+                .setMessage(new ParameterizedMessage("Hello {}", "world"))
+                .setContextData(context)
+                .setThrown(new IllegalStateException("failure"))
+                .build();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWriteSameDocumentAsConvert() throws Exception {
+        // Given
+        OpensearchConfiguration configuration = createConfiguration();
+        StreamingLogConverter converter = (StreamingLogConverter) configuration.getConverter();
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        BulkBuffer buffer = new BulkBuffer(16);
+        LogEvent event = createEvent();
+
+        // When
+        encoder.writeIndexOperation(buffer, "idx", event, converter);
+
+        // Then
+        String[] lines = buffer.toString(UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        Map<String, Object> document = new ObjectMapper().readValue(lines[1], Map.class);
+        assertThat(document)
+                .isEqualTo(converter.convert(event))
+                .containsEntry("datetime", "2023-11-14T22:13:20.123Z")
+                .containsEntry("logmessage", "Hello world")
+                .containsEntry("level", "WARN")
+                .containsEntry("key", "value");
+        assertThat((String) document.get("stacktrace")).contains("IllegalStateException: failure");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testWriteEscapedStaticFields() throws Exception {
+        // Given
+        OpensearchConfiguration configuration = createConfiguration();
+        configuration.setHost("my \"quoted\" host");
+        configuration.setEnvironment(null);
+        configuration.setConverter(DefaultStreamingLogConverter.class.getName());
+        StreamingLogConverter converter = (StreamingLogConverter) configuration.getConverter();
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        BulkBuffer buffer = new BulkBuffer(16);
+
+        // When
+        encoder.writeIndexOperation(buffer, "first", createEvent(), converter);
+        encoder.writeIndexOperation(buffer, "second", createEvent(), converter);
+
+        // Then
+        String[] lines = buffer.toString(UTF_8).split("\n");
+        assertThat(lines).hasSize(4);
+        assertThat(lines[0]).isEqualTo("{\"index\":{\"_index\":\"first\"}}");
+        assertThat(lines[2]).isEqualTo("{\"index\":{\"_index\":\"second\"}}");
+        Map<String, Object> document = new ObjectMapper().readValue(lines[3], Map.class);
+        assertThat(document)
+                .containsEntry("host", "my \"quoted\" host")
+                .containsEntry("application", "my-application")
+                .doesNotContainKey("environment");
+    }
+
+    @Test
+    void testContextKeysFilter() {
+        // Given
+        OpensearchConfiguration configuration = createConfiguration();
+        configuration.setContextKeys("requestId, user.*");
+        SortedArrayStringMap context = new SortedArrayStringMap();
+        context.putValue("requestId", "42");
+        context.putValue("user.name", "john \"doe\"");
+        context.putValue("session", "secret");
+        LogEvent event = Log4jLogEvent.newBuilder()
+                .setLevel(WARN)
+                .setMessage(new ParameterizedMessage("Hello"))
+                .setContextData(context)
+                .build();
+
+        // When
+        Map<String, Object> document = configuration.getConverter().convert(event);
+
+        // Then
+        assertThat(document)
+                .containsEntry("requestId", "42")
+                .containsEntry("user.name", "john \"doe\"")
+                .doesNotContainKey("session");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testContextKeysReserved() throws Exception {
+        // Given
+        OpensearchConfiguration configuration = createConfiguration();
+        StreamingLogConverter converter = (StreamingLogConverter) configuration.getConverter();
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        BulkBuffer buffer = new BulkBuffer(16);
+        SortedArrayStringMap context = new SortedArrayStringMap();
+        context.putValue("host", "other-host");
+        context.putValue("level", "FATAL");
+        context.putValue("requestId", "42");
+        LogEvent event = Log4jLogEvent.newBuilder()
+                .setLoggerFqcn("my.logger")
+                .setLevel(WARN)
+                .setMessage(new ParameterizedMessage("Hello"))
+                .setContextData(context)
+                .build();
+
+        // When
+        encoder.writeIndexOperation(buffer, "idx", event, converter);
+        Map<String, Object> converted = converter.convert(event);
+
+        // Then
+        String line = buffer.toString(UTF_8).split("\n")[1];
+        assertThat(line.split("\"level\"", -1)).hasSize(2);
+        assertThat(line.split("\"host\"", -1)).hasSize(2);
+        assertThat(new ObjectMapper().readValue(line, Map.class))
+                .isEqualTo(converted)
+                .containsEntry("host", "my-host")
+                .containsEntry("level", "WARN")
+                .containsEntry("requestId", "42");
+    }
+
+    @Test
+    void testLargeTextNotRetained() {
+        // Given
+        DefaultStreamingLogConverter.Buffers buffer = new DefaultStreamingLogConverter.Buffers();
+        StringBuilder large = new StringBuilder("x".repeat(100_000));
+        StringBuilder small = new StringBuilder("x".repeat(100));
+
+        // When
+        char[] largeChars = buffer.chars(large);
+        char[] smallChars = buffer.chars(small);
+
+        // Then
+        assertThat(largeChars).hasSizeGreaterThanOrEqualTo(100_000);
+        assertThat(smallChars).isNotSameAs(largeChars).hasSizeLessThanOrEqualTo(16 * 1024);
+        assertThat(new String(smallChars, 0, small.length())).isEqualTo(small.toString());
+    }
+
+    @Test
+    void testContextKeysFilterWithDeduplication() {
+        // Given
+        OpensearchConfiguration configuration = createConfiguration();
+        configuration.setContextKeys("requestId");
+        configuration.setDeduplicationWindow(Duration.ofMinutes(1));
+        DeliveryMetrics metrics = new DeliveryMetrics(new PendingBudget(0, 0), () -> 0);
+        List<LogEvent> collapsed = new ArrayList<>();
+
+        try (EventSampler sampler = new EventSampler(configuration, metrics, collapsed::add)) {
+            for (int i = 0; i < 3; i++) {
+                SortedArrayStringMap context = new SortedArrayStringMap();
+                context.putValue("requestId", "42");
+                context.putValue("session", "secret");
+                sampler.sample(Log4jLogEvent.newBuilder()
+                        .setLoggerName("my-logger")
+                        .setLevel(WARN)
+                        .setMessage(new ParameterizedMessage("Request {} failed", i))
+                        .setContextData(context)
+                        .build());
+            }
+        }
+
+        // When
+        Map<String, Object> document = configuration.getConverter().convert(collapsed.get(0));
+
+        // Then
+        assertThat(document)
+                .containsEntry("requestId", "42")
+                .containsEntry(EventSampler.OCCURRENCES_KEY, "2")
+                .doesNotContainKey("session");
+    }
+
+    @Test
+    void testContextSnapshotReused() {
+        // Given
+        DefaultStreamingLogConverter converter = new DefaultStreamingLogConverter();
+        converter.configure(createConfiguration());
+        DefaultStreamingLogConverter.Buffers buffer = new DefaultStreamingLogConverter.Buffers();
+        SortedArrayStringMap context = new SortedArrayStringMap();
+        context.putValue("requestId", "42");
+        SortedArrayStringMap copy = new SortedArrayStringMap(context);
+        context.freeze();
+
+        // When
+        ContextSnapshot first = converter.getContextSnapshot(context, buffer);
+        ContextSnapshot same = converter.getContextSnapshot(context, buffer);
+        ContextSnapshot equal = converter.getContextSnapshot(copy, buffer);
+        copy.putValue("requestId", "43");
+        ContextSnapshot changed = converter.getContextSnapshot(copy, buffer);
+
+        // Then
+        assertThat(same).isSameAs(first);
+        assertThat(equal).isSameAs(first);
+        assertThat(changed).isNotSameAs(first);
+        assertThat(first.getJson().getValue()).isEqualTo(",\"requestId\":\"42\"");
+        assertThat(changed.getFields()).containsExactly(Map.entry("requestId", "43"));
+    }
+
+}
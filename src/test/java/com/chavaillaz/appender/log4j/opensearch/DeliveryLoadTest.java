@@ -0,0 +1,185 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.apache.logging.log4j.Level.INFO;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.chavaillaz.appender.log4j.opensearch.BulkStubServer.Faults;
+import com.chavaillaz.appender.log4j.opensearch.BulkStubServer.IndexedDocument;
+import com.chavaillaz.appender.log4j.opensearch.OpensearchLogDeliveryTest.CollectingDeadLetterHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.core.LogEvent;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Load tests of the delivery against a local stub server injecting faults, measuring the throughput,
+ * the latency between the creation of the events and their reception by the server, and the events lost.
+ * Tagged {@code load} in order to be run only with the profile {@code load-tests}.
+ */
+@Log4j2
+@Tag("load")
+class DeliveryLoadTest {
+
+    private static final int EVENTS = 20_000;
+    private static final int THREADS = 4;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    protected static OpensearchConfiguration createConfiguration(String url, Path spoolDirectory) {
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setApplication("my-application");
+        configuration.setHost("my-host");
+        configuration.setEnvironment("my-environment");
+        configuration.setConverter(DefaultStreamingLogConverter.class.getName());
+        configuration.setIndex("idx");
+        configuration.setUrl(url);
+        configuration.setUser("user");
+        configuration.setPassword("password");
+        configuration.setStreamingBulk(true);
+        configuration.setFlushThreshold(500);
+        configuration.setFlushInterval(Duration.ofMillis(100));
+        configuration.setOverflowPolicy(OverflowPolicy.BLOCK);
+        configuration.setMaxRetries(10);
+        configuration.setRetryInitialDelay(Duration.ofMillis(1));
+        configuration.setRetryMaxDelay(Duration.ofMillis(20));
+        configuration.setSpoolDirectory(spoolDirectory.toString());
+        configuration.setSpoolMaxSize(64L * 1024 * 1024);
+        configuration.setSpoolSegmentSize(4 * 1024 * 1024);
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        return configuration;
+    }
+
+    protected static void sendEvents(OpensearchLogDelivery delivery, int thread) {
+        for (int i = thread; i < EVENTS; i += THREADS) {
+            LogEvent event = OpensearchLogDeliveryTest.createEvent(INFO, "event-" + i);
+            if (delivery.accept(event)) {
+                delivery.send(event);
+            }
+        }
+    }
+
+    protected static Set<String> getMessages(List<String> sources) throws Exception {
+        Set<String> messages = new HashSet<>();
+        for (String source : sources) {
+            messages.add(MAPPER.readTree(source).path("logmessage").asText());
+        }
+        return messages;
+    }
+
+    protected static long[] getLatencies(List<IndexedDocument> documents) throws Exception {
+        long[] latencies = new long[documents.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            JsonNode source = MAPPER.readTree(documents.get(i).source());
+            long created = OffsetDateTime.parse(source.path("datetime").asText()).toInstant().toEpochMilli();
+            latencies[i] = documents.get(i).time() - created;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    protected static long percentile(long[] sorted, double percentile) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    @ParameterizedTest
+    @EnumSource(FaultProfile.class)
+    void testDeliveryUnderFaults(FaultProfile profile) throws Exception {
+        // Given
+        Path spoolDirectory = Files.createTempDirectory("spool");
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+
+        try (BulkStubServer server = new BulkStubServer(profile.getFaults());
+             OpensearchLogDelivery delivery = new OpensearchLogDelivery(createConfiguration(server.getUrl(), spoolDirectory))) {
+
+            // When
+            long start = System.nanoTime();
+            List<Future<?>> senders = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int index = thread;
+                senders.add(threads.submit(() -> sendEvents(delivery, index)));
+            }
+            for (Future<?> sender : senders) {
+                sender.get();
+            }
+            delivery.flush();
+            long deadline = start + TIMEOUT.toNanos();
+            Set<String> indexed = Set.of();
+            Set<String> deadLetters = Set.of();
+            while (System.nanoTime() < deadline) {
+                indexed = getMessages(server.getDocuments().stream().map(IndexedDocument::source).toList());
+                deadLetters = getMessages(CollectingDeadLetterHandler.DOCUMENTS);
+                if (indexed.size() + deadLetters.size() >= EVENTS) {
+                    break;
+                }
+                Thread.sleep(20);
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            // Then
+            long[] latencies = getLatencies(server.getDocuments());
+            long lost = EVENTS - indexed.size() - deadLetters.size();
+            log.info("{}: {} events/s, latency p50 {} ms, p99 {} ms, max {} ms, {} bulks, {} duplicates, {} dead letters, {} lost",
+                    profile, Math.round(EVENTS / elapsed),
+                    percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 1),
+                    server.getBulks(), server.getDocuments().size() - indexed.size(), deadLetters.size(), lost);
+
+            Set<String> rejected = getMessages(server.getRejectedDocuments());
+            assertThat(lost).isZero();
+            assertThat(deadLetters).isEqualTo(rejected);
+            if (profile.getFaults().rejectedItems() == 0) {
+                assertThat(rejected).isEmpty();
+            } else {
+                assertThat(rejected).isNotEmpty();
+                assertThat(indexed).doesNotContainAnyElementsOf(rejected);
+            }
+        } finally {
+            threads.shutdownNow();
+            threads.awaitTermination(1, TimeUnit.SECONDS);
+            try (Stream<Path> files = Files.walk(spoolDirectory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    enum FaultProfile {
+
+        NONE(Faults.NONE),
+        LATENCY(new Faults(Duration.ofMillis(20), 0, 0, 0, 0)),
+        THROTTLING(new Faults(Duration.ZERO, 0, 0.2, 0, 0)),
+        PARTIAL_FAILURES(new Faults(Duration.ZERO, 0, 0, 0.1, 0.01)),
+        CONNECTION_RESETS(new Faults(Duration.ZERO, 0.05, 0, 0, 0));
+
+        private final Faults faults;
+
+        FaultProfile(Faults faults) {
+            this.faults = faults;
+        }
+
+        Faults getFaults() {
+            return faults;
+        }
+
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+class DeliveryMetricsTest {
+
+    @Test
+    void testBulkCounters() {
+        // Given
+        DeliveryMetrics metrics = new DeliveryMetrics(new PendingBudget(0, 0), () -> 42);
+
+        // When
+        long first = metrics.onBulkStarted();
+        long second = metrics.onBulkStarted();
+        metrics.onBulkStarted();
+        metrics.onBulkResponse(first, 1_000, true);
+        metrics.onSentDocuments(8);
+        metrics.onBulkResponse(second - 30_000_000_000L, 500, false);
+
+        // Then
+        assertThat(metrics.getInFlightBulks()).isEqualTo(1);
+        assertThat(metrics.getSentBulks()).isEqualTo(1);
+        assertThat(metrics.getFailedBulks()).isEqualTo(1);
+        assertThat(metrics.getSentDocuments()).isEqualTo(8);
+        assertThat(metrics.getSentBytes()).isEqualTo(1_000);
+        assertThat(metrics.getBulkLatencyCount()).isEqualTo(2);
+        assertThat(metrics.getBulkLatencyCounts()[0]).isEqualTo(1);
+        assertThat(metrics.getBulkLatencyCounts()[metrics.getBulkLatencyBounds().length]).isEqualTo(1);
+        assertThat(metrics.getBulkLatencyTotal()).isGreaterThanOrEqualTo(30_000);
+        assertThat(metrics.getSpoolSize()).isEqualTo(42);
+    }
+
+    @Test
+    void testJmxRegistration() throws Exception {
+        // Given
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DeliveryMetrics.JMX_DOMAIN + ":type=OpensearchAppender,name=\"metrics-test\"");
+        DeliveryMetrics previous = new DeliveryMetrics(new PendingBudget(0, 0), () -> 0);
+        DeliveryMetrics current = new DeliveryMetrics(new PendingBudget(0, 0), () -> 0);
+        current.onAppended();
+
+        // When
+        previous.register("metrics-test", true, false);
+        current.register("metrics-test", true, false);
+        previous.unregister();
+
+        // Then
+        assertThat(server.getAttribute(name, "AppendedEvents")).isEqualTo(1L);
+        current.unregister();
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.apache.logging.log4j.Level.ERROR;
+import static org.apache.logging.log4j.Level.INFO;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.junit.jupiter.api.Test;
+
+class EventSamplerTest {
+
+    protected static LogEvent createEvent(Level level, Object parameter) {
+        return Log4jLogEvent.newBuilder()
+                .setLoggerName("my-logger")
+                .setLevel(level)
+                .setMessage(new ParameterizedMessage("Request {} failed", parameter))
+                .build();
+    }
+
+    @Test
+    void testDeduplication() {
+        // Given
+        List<LogEvent> collapsed = new CopyOnWriteArrayList<>();
+        DeliveryMetrics metrics = new DeliveryMetrics(new PendingBudget(0, 0), () -> 0);
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setDeduplicationWindow(Duration.ofMinutes(1));
+
+        try (EventSampler sampler = new EventSampler(configuration, metrics, collapsed::add)) {
+            // When
+            boolean first = sampler.sample(createEvent(ERROR, 1));
+            boolean second = sampler.sample(createEvent(ERROR, 2));
+            boolean third = sampler.sample(createEvent(ERROR, 3));
+            boolean other = sampler.sample(createEvent(INFO, 4));
+            sampler.close();
+
+            // Then
+            assertThat(first).isTrue();
+            assertThat(second).isFalse();
+            assertThat(third).isFalse();
+            assertThat(other).isTrue();
+            assertThat(metrics.getCollapsedEvents()).isEqualTo(2);
+            assertThat(collapsed).singleElement().satisfies(event -> {
+                assertThat(event.getMessage().getFormattedMessage()).isEqualTo("Request 1 failed");
+                assertThat(event.getContextData().<String>getValue(EventSampler.OCCURRENCES_KEY)).isEqualTo("2");
+            });
+        }
+    }
+
+    @Test
+    void testRateLimits() {
+        // Given
+        DeliveryMetrics metrics = new DeliveryMetrics(new PendingBudget(0, 0), () -> 0);
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setRateLimits("info=2, unknown=5, ERROR=invalid");
+
+        try (EventSampler sampler = new EventSampler(configuration, metrics, event -> {
+        })) {
+            // When
+            List<Boolean> info = List.of(
+                    sampler.sample(createEvent(INFO, 1)),
+                    sampler.sample(createEvent(INFO, 2)),
+                    sampler.sample(createEvent(INFO, 3)));
+            boolean error = sampler.sample(createEvent(ERROR, 4));
+
+            // Then
+            assertThat(configuration.getRateLimits()).containsOnlyKeys(INFO);
+            assertThat(info).containsExactly(true, true, false);
+            assertThat(error).isTrue();
+            assertThat(metrics.getRateLimitedEvents()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void testTokenBucketRefill() {
+        // Given
+        TokenBucket bucket = new TokenBucket(2);
+        long now = System.nanoTime();
+
+        // When
+        boolean first = bucket.tryAcquire(now);
+        boolean second = bucket.tryAcquire(now);
+        boolean exceeded = bucket.tryAcquire(now);
+        boolean refilled = bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(500));
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(exceeded).isFalse();
+        assertThat(refilled).isTrue();
+    }
+
+}
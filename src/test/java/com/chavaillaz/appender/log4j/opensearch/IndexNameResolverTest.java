@@ -0,0 +1,34 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class IndexNameResolverTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Zurich");
+
+    @ParameterizedTest
+    @ValueSource(strings = {"-yyyy.MM.dd", "-yyyy.MM", "-YYYY.ww", "-yyyy.MM.dd.HH", "-yyyy.MM.dd-a"})
+    void testResolveSameAsFormat(String pattern) {
+        // Given
+        DateTimeFormatter suffix = DateTimeFormatter.ofPattern(pattern);
+        IndexNameResolver resolver = new IndexNameResolver("idx", suffix, ZONE);
+        ZonedDateTime start = ZonedDateTime.of(2024, 3, 30, 22, 0, 0, 0, ZONE);
+
+        for (int minutes = 0; minutes < 3 * 24 * 60; minutes += 7) {
+            // When
+            ZonedDateTime time = start.plusMinutes(minutes);
+            String name = resolver.resolve(time.toInstant().toEpochMilli());
+
+            // Then
+            assertThat(name).isEqualTo("idx" + time.format(suffix));
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class LogEventRingBufferTest {
+
+    @ParameterizedTest
+    @EnumSource(WaitStrategy.class)
+    void testMultipleProducers(WaitStrategy waitStrategy) throws Exception {
+        // Given
+        int producers = 4;
+        int events = 10_000;
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        LogEventRingBuffer ringBuffer = new LogEventRingBuffer(100, waitStrategy, event -> received
+                .computeIfAbsent(event.getThreadName(), key -> new ArrayList<>())
+                .add(Integer.parseInt(event.getMessage().getFormattedMessage())));
+        ringBuffer.start();
+
+        // When
+        List<Thread> threads = new ArrayList<>();
+        for (int producer = 0; producer < producers; producer++) {
+            String name = "producer-" + producer;
+            threads.add(Thread.ofPlatform().name(name).start(() -> {
+                for (int i = 0; i < events; i++) {
+                    ringBuffer.publish(Log4jLogEvent.newBuilder()
+                            .setThreadName(name)
+                            .setMessage(new SimpleMessage(String.valueOf(i)))
+                            .build(), Duration.ofSeconds(10));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        boolean drained = ringBuffer.stop(10, SECONDS);
+
+        // Then
+        assertThat(ringBuffer.getCapacity()).isEqualTo(128);
+        assertThat(drained).isTrue();
+        assertThat(received).hasSize(producers);
+        for (List<Integer> values : received.values()) {
+            assertThat(values).hasSize(events).isSorted();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(WaitStrategy.class)
+    void testStopWhilePublishing(WaitStrategy waitStrategy) throws Exception {
+        for (int iteration = 0; iteration < 100; iteration++) {
+            // Given
+            AtomicLong processed = new AtomicLong();
+            AtomicLong published = new AtomicLong();
+            LogEventRingBuffer ringBuffer = new LogEventRingBuffer(1024, waitStrategy, event -> processed.incrementAndGet());
+            LogEvent event = Log4jLogEvent.newBuilder().setMessage(new SimpleMessage("message")).build();
+            ringBuffer.start();
+            List<Thread> threads = new ArrayList<>();
+            for (int producer = 0; producer < 4; producer++) {
+                threads.add(Thread.ofPlatform().start(() -> {
+                    while (ringBuffer.publish(event, Duration.ofSeconds(1))) {
+                        published.incrementAndGet();
+                    }
+                }));
+            }
+
+            // When
+            boolean drained = ringBuffer.stop(10, SECONDS);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // Then
+            assertThat(drained).isTrue();
+            assertThat(ringBuffer.getPending()).isZero();
+            assertThat(processed.get()).isEqualTo(published.get());
+        }
+    }
+
+    @Test
+    void testPublishBounded() {
+        // Given
+        LogEventRingBuffer ringBuffer = new LogEventRingBuffer(2, WaitStrategy.BLOCKING, event -> {
+            throw new IllegalStateException("Never consumed");
+        });
+        LogEvent event = Log4jLogEvent.newBuilder().setMessage(new SimpleMessage("message")).build();
+        ringBuffer.start();
+        ringBuffer.stop(10, MILLISECONDS);
+
+        // When
+        long start = System.nanoTime();
+        boolean published = ringBuffer.publish(event, Duration.ofSeconds(10));
+
+        // Then
+        assertThat(published).isFalse();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+        assertThat(ringBuffer.getPending()).isZero();
+    }
+
+    @Test
+    void testPublishTimeout() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        LogEventRingBuffer ringBuffer = new LogEventRingBuffer(2, WaitStrategy.BLOCKING, event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        LogEvent event = Log4jLogEvent.newBuilder().setMessage(new SimpleMessage("message")).build();
+        ringBuffer.start();
+        for (int i = 0; i < ringBuffer.getCapacity(); i++) {
+            assertThat(ringBuffer.publish(event, Duration.ofSeconds(1))).isTrue();
+        }
+
+        // When
+        boolean published = ringBuffer.publish(event, Duration.ofMillis(50));
+        release.countDown();
+
+        // Then
+        assertThat(published).isFalse();
+        assertThat(ringBuffer.stop(10, SECONDS)).isTrue();
+    }
+
+}
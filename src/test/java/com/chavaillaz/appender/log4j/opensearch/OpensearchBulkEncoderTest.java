@@ -0,0 +1,75 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class OpensearchBulkEncoderTest {
+
+    @Test
+    void testWriteIndexOperations() throws Exception {
+        // Given
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        BulkBuffer buffer = new BulkBuffer(16);
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("logmessage", "Hello \"world\"");
+        document.put("count", 2);
+
+        // When
+        encoder.writeIndexOperation(buffer, "idx", document);
+        encoder.writeIndexOperation(buffer, "idx", Map.of("flag", true));
+
+        // Then
+        assertThat(buffer.getDocuments()).isEqualTo(2);
+        assertThat(buffer.toString(UTF_8)).isEqualTo("""
+                {"index":{"_index":"idx"}}
+                {"logmessage":"Hello \\"world\\"","count":2}
+                {"index":{"_index":"idx"}}
+                {"flag":true}
+                """);
+    }
+
+    @Test
+    void testWriteCreateOperations() throws Exception {
+        // Given
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper(), new DocumentIdGenerator("my-host"));
+        BulkBuffer buffer = new BulkBuffer(16);
+
+        // When
+        encoder.writeIndexOperation(buffer, "logs", Map.of("key", "first"));
+        encoder.writeIndexOperation(buffer, "logs", Map.of("key", "second"));
+
+        // Then
+        List<String> lines = buffer.toString(UTF_8).lines().toList();
+        assertThat(lines).hasSize(4);
+        assertThat(lines.get(0)).matches("\\{\"create\":\\{\"_index\":\"logs\",\"_id\":\"[-0-9A-Z_a-z]{20}\"}}");
+        assertThat(lines.get(2)).isGreaterThan(lines.get(0));
+        assertThat(buffer.getDocumentSource(1)).isEqualTo("{\"key\":\"second\"}");
+    }
+
+    @Test
+    void testBufferReuse() throws Exception {
+        // Given
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        BulkBufferPool pool = new BulkBufferPool(16, 1024);
+        BulkBuffer buffer = pool.acquire();
+        encoder.writeIndexOperation(buffer, "idx", Map.of("key", "value"));
+
+        // When
+        pool.release(buffer);
+        BulkBuffer reused = pool.acquire();
+        encoder.writeIndexOperation(reused, "other", Map.of("key", "value"));
+
+        // Then
+        assertThat(reused).isSameAs(buffer);
+        assertThat(reused.getDocuments()).isEqualTo(1);
+        assertThat(reused.toString(UTF_8)).startsWith("{\"index\":{\"_index\":\"other\"}}");
+    }
+
+}
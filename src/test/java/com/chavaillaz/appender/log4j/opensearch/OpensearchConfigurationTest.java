@@ -30,6 +30,43 @@ class OpensearchConfigurationTest {
         assertThat(indexName).isEqualTo(index + "-" + formatter.format(date));
     }
 
+    @Test
+    void testGenerateIndexNameTimestamp() {
+        // Given
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setIndex("idx");
+        configuration.setIndexSuffix("-yyyy.MM.dd");
+        OffsetDateTime date = now();
+        String first = configuration.generateIndexName(date.toInstant().toEpochMilli());
+
+        // When
+        configuration.setIndex("other");
+        String second = configuration.generateIndexName(date.toInstant().toEpochMilli());
+
+        // Then
+        assertThat(first).isEqualTo(configuration.generateIndexName(date).replace("other", "idx"));
+        assertThat(second).isEqualTo(configuration.generateIndexName(date));
+    }
+
+    @Test
+    void testDefaultsOutsideBuilder() {
+        // Given
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        OpensearchConfiguration built = new OpensearchAppender.Builder().setName("test").build().getLogConfiguration();
+
+        // When / Then
+        assertThat(configuration.getOverflowPolicy()).isEqualTo(built.getOverflowPolicy());
+        assertThat(configuration.getOverflowTimeout()).isEqualTo(built.getOverflowTimeout());
+        assertThat(configuration.getOverflowLevel()).isEqualTo(built.getOverflowLevel());
+        assertThat(configuration.getFlushThreshold()).isEqualTo(built.getFlushThreshold());
+        assertThat(configuration.getFlushInterval()).isEqualTo(built.getFlushInterval());
+        assertThat(configuration.getMaxRetries()).isEqualTo(built.getMaxRetries());
+        assertThat(configuration.getRetryInitialDelay()).isEqualTo(built.getRetryInitialDelay());
+        assertThat(configuration.getCompression()).isEqualTo(built.getCompression());
+        assertThat(configuration.getWaitStrategy()).isEqualTo(built.getWaitStrategy());
+        assertThat(configuration.getNodeSelection()).isEqualTo(built.getNodeSelection());
+    }
+
     @Test
     void testWrongConverter() {
         // Given
@@ -0,0 +1,677 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static com.chavaillaz.appender.log4j.opensearch.OpensearchUtils.getJsonMapper;
+import static org.apache.logging.log4j.Level.ERROR;
+import static org.apache.logging.log4j.Level.INFO;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import com.chavaillaz.appender.log4j.DefaultLogConverter;
+import com.chavaillaz.appender.log4j.opensearch.BulkStubServer.ReceivedRequest;
+import com.chavaillaz.appender.log4j.opensearch.BulkStubServer.StubResponse;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.Test;
+import org.opensearch.client.opensearch.core.bulk.BulkResponseItem;
+
+class OpensearchLogDeliveryTest {
+
+    protected static OpensearchConfiguration createConfiguration(OverflowPolicy policy) {
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setApplication("my-application");
+        configuration.setHost("my-host");
+        configuration.setEnvironment("my-environment");
+        configuration.setConverter(DefaultStreamingLogConverter.class.getName());
+        configuration.setIndex("idx");
+        configuration.setUrl("http://localhost:1");
+        configuration.setUser("user");
+        configuration.setPassword("password");
+        configuration.setFlushThreshold(100);
+        configuration.setFlushInterval(Duration.ofMinutes(1));
+        configuration.setStreamingBulk(true);
+        configuration.setMaxPendingEvents(2);
+        configuration.setOverflowPolicy(policy);
+        configuration.setOverflowTimeout(Duration.ofMillis(10));
+        configuration.setOverflowLevel(ERROR);
+        return configuration;
+    }
+
+    protected static LogEvent createEvent(Level level) {
+        return createEvent(level, "message");
+    }
+
+    protected static LogEvent createEvent(Level level, String message) {
+        return Log4jLogEvent.newBuilder()
+                .setLevel(level)
+                .setMessage(new SimpleMessage(message))
+                .build();
+    }
+
+    protected static void sendEvents(OpensearchLogDelivery delivery, Level... levels) {
+        for (Level level : levels) {
+            LogEvent event = createEvent(level);
+            if (delivery.accept(event)) {
+                delivery.send(event);
+            }
+        }
+    }
+
+    @Test
+    void testOverflowDropNewest() throws Exception {
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(createConfiguration(OverflowPolicy.DROP_NEWEST))) {
+            // When
+            sendEvents(delivery, INFO, INFO, ERROR);
+
+            // Then
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isEqualTo(2);
+            assertThat(delivery.getPendingBudget().getDroppedEvents()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void testOverflowDropOldest() throws Exception {
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(createConfiguration(OverflowPolicy.DROP_OLDEST))) {
+            // When
+            sendEvents(delivery, INFO, INFO, INFO, INFO);
+
+            // Then
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isEqualTo(2);
+            assertThat(delivery.getPendingBudget().getPendingBytes()).isPositive();
+            assertThat(delivery.getPendingBudget().getDroppedEvents()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void testOverflowDropBelowLevel() throws Exception {
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(createConfiguration(OverflowPolicy.DROP_BELOW_LEVEL))) {
+            // When
+            sendEvents(delivery, INFO, INFO, INFO, ERROR);
+
+            // Then
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isEqualTo(3);
+            assertThat(delivery.getPendingBudget().getDroppedEvents()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void testOverflowBlockTimeout() throws Exception {
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(createConfiguration(OverflowPolicy.BLOCK))) {
+            // When
+            sendEvents(delivery, INFO, INFO, INFO);
+
+            // Then
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isEqualTo(2);
+            assertThat(delivery.getPendingBudget().getDroppedEvents()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void testPartialFailureRetry() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted(StubResponse.ok("""
+                {"took":1,"errors":true,"items":[
+                {"index":{"_index":"idx","_id":"1","status":201}},
+                {"index":{"_index":"idx","_id":"2","status":429,"error":{"type":"es_rejected_execution_exception","reason":"busy"}}},
+                {"index":{"_index":"idx","_id":"3","status":400,"error":{"type":"mapper_parsing_exception","reason":"invalid"}}}]}"""));
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setMaxPendingEvents(0);
+        configuration.setMaxRetries(3);
+        configuration.setRetryInitialDelay(Duration.ofMillis(1));
+        configuration.setRetryMaxDelay(Duration.ofMillis(10));
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            for (String message : List.of("first", "second", "third")) {
+                LogEvent event = createEvent(INFO, message);
+                delivery.accept(event);
+                delivery.send(event);
+            }
+            delivery.flush();
+
+            // Then
+            assertThat(server.getBodies()).hasSize(2);
+            assertThat(server.getBodies().get(1))
+                    .contains("second")
+                    .doesNotContain("first", "third");
+            assertThat(CollectingDeadLetterHandler.DOCUMENTS)
+                    .singleElement(InstanceOfAssertFactories.STRING)
+                    .contains("third");
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isZero();
+            assertThat(delivery.getMetrics().getAppendedEvents()).isEqualTo(3);
+            assertThat(delivery.getMetrics().getSentBulks()).isEqualTo(2);
+            assertThat(delivery.getMetrics().getSentDocuments()).isEqualTo(2);
+            assertThat(delivery.getMetrics().getFailedDocuments()).isEqualTo(2);
+            assertThat(delivery.getMetrics().getDeadLetterDocuments()).isEqualTo(1);
+            assertThat(delivery.getMetrics().getRetries()).isEqualTo(1);
+            assertThat(delivery.getMetrics().getInFlightBulks()).isZero();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testEncodedBulkConnectionResetRetry() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted(StubResponse.reset());
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setMaxPendingEvents(0);
+        configuration.setRetryInitialDelay(Duration.ofMillis(1));
+        configuration.setRetryMaxDelay(Duration.ofMillis(10));
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            sendEvents(delivery, INFO, INFO, ERROR);
+            delivery.flush();
+
+            // Then
+            assertThat(server.getRequests()).hasSize(2);
+            assertThat(CollectingDeadLetterHandler.DOCUMENTS).isEmpty();
+            assertThat(delivery.getMetrics().getSentDocuments()).isEqualTo(3);
+            assertThat(delivery.getMetrics().getRetries()).isEqualTo(1);
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isZero();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testEncodedBulkConnectionResetWithoutSpool() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted();
+        server.setDefaultResponse(StubResponse.reset());
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setMaxPendingEvents(0);
+        configuration.setMaxRetries(1);
+        configuration.setRetryInitialDelay(Duration.ofMillis(1));
+        configuration.setRetryMaxDelay(Duration.ofMillis(10));
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            sendEvents(delivery, INFO, INFO, ERROR);
+            delivery.flush();
+
+            // Then
+            assertThat(server.getRequests()).hasSize(2);
+            assertThat(CollectingDeadLetterHandler.DOCUMENTS).hasSize(3);
+            assertThat(delivery.getMetrics().getDeadLetterDocuments()).isEqualTo(3);
+            assertThat(delivery.getMetrics().getSentDocuments()).isZero();
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isZero();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testPermanentFailureNotSpooled() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted(StubResponse.of(400, """
+                {"error":{"type":"illegal_argument_exception","reason":"invalid bulk"},"status":400}"""));
+        Path directory = Files.createTempDirectory("spool");
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setMaxPendingEvents(0);
+        configuration.setSpoolDirectory(directory.toString());
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+
+        try {
+            try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+                // When
+                sendEvents(delivery, INFO, INFO, ERROR);
+                delivery.flush();
+
+                // Then
+                assertThat(server.getRequests()).hasSize(1);
+                assertThat(CollectingDeadLetterHandler.DOCUMENTS).hasSize(3);
+                assertThat(delivery.getMetrics().getSpooledDocuments()).isZero();
+                assertThat(delivery.getPendingBudget().getPendingEvents()).isZero();
+            }
+            assertThat(countSpooledDocuments(directory)).isZero();
+        } finally {
+            server.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testSpoolReplayPermanentFailure() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted(StubResponse.of(400, """
+                {"error":{"type":"illegal_argument_exception","reason":"invalid bulk"},"status":400}"""));
+        server.setDefaultResponse(StubResponse.accepted());
+        Path directory = Files.createTempDirectory("spool");
+        OpensearchBulkEncoder encoder = new OpensearchBulkEncoder(getJsonMapper().objectMapper());
+        try (BulkSpool spool = new BulkSpool(directory, 4096, 256)) {
+            for (String message : List.of("refused", "accepted")) {
+                BulkBuffer bulk = new BulkBuffer(64);
+                encoder.writeIndexOperation(bulk, "idx", Map.of("logmessage", message));
+                spool.append(bulk);
+            }
+        }
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setFlushInterval(Duration.ofMillis(20));
+        configuration.setSpoolDirectory(directory.toString());
+        configuration.setSpoolMaxSize(4096);
+        configuration.setSpoolSegmentSize(256);
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (delivery.getMetrics().getSentDocuments() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Then
+            assertThat(server.getBodies()).hasSize(2)
+                    .satisfies(bodies -> assertThat(bodies.get(0)).contains("refused"))
+                    .satisfies(bodies -> assertThat(bodies.get(1)).contains("accepted"));
+            assertThat(CollectingDeadLetterHandler.DOCUMENTS).singleElement().asString().contains("refused");
+            assertThat(delivery.getMetrics().getSentDocuments()).isEqualTo(1);
+        } finally {
+            server.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testTypedBulkTransientFailureRetry() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted(StubResponse.of(503, """
+                {"error":{"type":"unavailable","reason":"node unavailable"},"status":503}"""));
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setStreamingBulk(false);
+        configuration.setMaxPendingEvents(0);
+        configuration.setMaxInFlightBulks(2);
+        configuration.setRetryInitialDelay(Duration.ofMillis(1));
+        configuration.setRetryMaxDelay(Duration.ofMillis(10));
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+        OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration);
+
+        try {
+            // When
+            LogEvent event = createEvent(INFO, "typed");
+            delivery.accept(event);
+            delivery.send(configuration.getConverter().convert(event));
+            delivery.close();
+
+            // Then
+            assertThat(server.getRequests()).hasSize(2);
+            assertThat(CollectingDeadLetterHandler.DOCUMENTS).isEmpty();
+            assertThat(delivery.getMetrics().getRetries()).isEqualTo(1);
+            assertThat(delivery.getMetrics().getFailedBulks()).isEqualTo(1);
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isZero();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testIndexNameFromLocalDateTime() throws Exception {
+        // Given
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setConverter(DefaultLogConverter.class.getName());
+        configuration.setIndexSuffix("-yyyy.MM.dd");
+        configuration.setIndexByEventTime(true);
+        Map<String, Object> document = new HashMap<>(configuration.getConverter().convert(createEvent(INFO)));
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            document.put("datetime", LocalDateTime.of(2020, 1, 2, 23, 59));
+            String fromDateTime = delivery.getIndexName(document);
+            document.put("datetime", LocalDate.of(2020, 1, 3));
+            String fromDate = delivery.getIndexName(document);
+            document.put("datetime", "2020-01-04T10:00:00");
+            String fromText = delivery.getIndexName(document);
+            document.put("datetime", "2020-01-05T10:00:00+01:00");
+            String fromOffsetText = delivery.getIndexName(document);
+
+            // Then
+            assertThat(fromDateTime).isEqualTo("idx-2020.01.02");
+            assertThat(fromDate).isEqualTo("idx-2020.01.03");
+            assertThat(fromText).isEqualTo("idx-2020.01.04");
+            assertThat(fromOffsetText).isEqualTo(configuration.generateIndexName(OffsetDateTime.parse("2020-01-05T10:00:00+01:00")
+                    .atZoneSameInstant(ZoneId.systemDefault()).toOffsetDateTime()));
+        }
+    }
+
+    @Test
+    void testShutdownDeadline() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        BulkStubServer server = BulkStubServer.scripted();
+        server.setDefaultResponse(StubResponse.reset().beforeResponding(() -> await(release)));
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setMaxPendingEvents(0);
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+        OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration);
+
+        try {
+            // When
+            sendEvents(delivery, INFO, INFO, ERROR);
+            long start = System.nanoTime();
+            delivery.setShutdownDeadline(start + TimeUnit.MILLISECONDS.toNanos(200));
+            delivery.close();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // Then
+            assertThat(elapsed).isLessThan(2_000);
+            assertThat(CollectingDeadLetterHandler.DOCUMENTS).isEmpty();
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isZero();
+            assertThat(delivery.getPendingBudget().getDroppedEvents()).isZero();
+            assertThat(delivery.getMetrics().getDeadLetterDocuments()).isZero();
+            assertThat(delivery.getMetrics().getSpooledDocuments()).isEqualTo(3);
+            assertThat(countSpooledDocuments(delivery.getShutdownSpoolDirectory())).isEqualTo(3);
+        } finally {
+            release.countDown();
+            server.close();
+            deleteDirectory(delivery.getShutdownSpoolDirectory());
+        }
+    }
+
+    @Test
+    void testAsyncFailureAfterShutdownDeadline() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        BulkStubServer server = BulkStubServer.scripted();
+        server.setDefaultResponse(StubResponse.of(503, """
+                {"error":{"type":"unavailable","reason":"node unavailable"},"status":503}""")
+                .beforeResponding(() -> await(release)));
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setMaxPendingEvents(0);
+        configuration.setMaxInFlightBulks(2);
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+        OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration);
+
+        try {
+            // When
+            sendEvents(delivery, INFO, INFO, ERROR);
+            delivery.flush();
+            delivery.setShutdownDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+            delivery.close();
+            release.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (delivery.getPendingBudget().getPendingEvents() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Then
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isZero();
+            assertThat(CollectingDeadLetterHandler.DOCUMENTS).isEmpty();
+            assertThat(delivery.getMetrics().getSpooledDocuments()).isEqualTo(3);
+            assertThat(delivery.getMetrics().getInFlightBulks()).isZero();
+            assertThat(countSpooledDocuments(delivery.getShutdownSpoolDirectory())).isEqualTo(3);
+        } finally {
+            release.countDown();
+            server.close();
+            deleteDirectory(delivery.getShutdownSpoolDirectory());
+        }
+    }
+
+    protected static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected static int countSpooledDocuments(Path directory) throws Exception {
+        int documents = 0;
+        try (BulkSpool spool = new BulkSpool(directory, 256L * 1024 * 1024, 16 * 1024 * 1024)) {
+            BulkBuffer bulk = new BulkBuffer(1024);
+            while (spool.peek(bulk)) {
+                documents += bulk.getDocuments();
+                spool.commit();
+            }
+        }
+        return documents;
+    }
+
+    protected static void deleteDirectory(Path directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    void testDataStreamDuplicates() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted(StubResponse.ok("""
+                {"took":1,"errors":true,"items":[
+                {"create":{"_index":"logs","_id":"1","status":201}},
+                {"create":{"_index":"logs","_id":"2","status":409,"error":{"type":"version_conflict_engine_exception","reason":"exists"}}}]}"""));
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setIndex("logs");
+        configuration.setIndexSuffix("-yyyy.MM.dd");
+        configuration.setStreamingBulk(false);
+        configuration.setDataStream(true);
+        configuration.setMaxPendingEvents(0);
+        configuration.setDeadLetterHandler(CollectingDeadLetterHandler.class.getName());
+        CollectingDeadLetterHandler.DOCUMENTS.clear();
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            sendEvents(delivery, INFO, INFO);
+            delivery.flush();
+
+            // Then
+            assertThat(server.getBodies()).singleElement(InstanceOfAssertFactories.STRING)
+                    .contains("{\"create\":{\"_index\":\"logs\",\"_id\":\"")
+                    .doesNotContain("\"index\"");
+            assertThat(CollectingDeadLetterHandler.DOCUMENTS).isEmpty();
+            assertThat(delivery.getMetrics().getFailedDocuments()).isZero();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testFailoverToAnotherNode() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted();
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl("http://localhost:1," + server.getUrl());
+        configuration.setMaxPendingEvents(0);
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            for (String message : List.of("first", "second")) {
+                LogEvent event = createEvent(INFO, message);
+                delivery.accept(event);
+                delivery.send(event);
+                delivery.flush();
+            }
+
+            // Then
+            assertThat(server.getRequests()).hasSize(2);
+            assertThat(delivery.getMetrics().getFailedBulks()).isZero();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testIngestPipeline() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted();
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setPipeline("logs-pipeline");
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            LogEvent event = createEvent(INFO, "through pipeline");
+            delivery.accept(event);
+            delivery.send(event);
+            delivery.flush();
+
+            // Then
+            assertThat(server.getRequests()).extracting(ReceivedRequest::query).containsExactly("pipeline=logs-pipeline");
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testConcurrentInFlightBulks() throws Exception {
+        // Given
+        CountDownLatch concurrent = new CountDownLatch(2);
+        AtomicInteger overlapping = new AtomicInteger();
+        BulkStubServer server = BulkStubServer.scripted();
+        server.setDefaultResponse(StubResponse.accepted().beforeResponding(() -> {
+            concurrent.countDown();
+            try {
+                if (concurrent.await(5, TimeUnit.SECONDS)) {
+                    overlapping.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setMaxPendingEvents(0);
+        configuration.setFlushThreshold(1);
+        configuration.setMaxInFlightBulks(2);
+        OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration);
+
+        try {
+            // When
+            for (String message : List.of("first", "second")) {
+                LogEvent event = createEvent(INFO, message);
+                delivery.accept(event);
+                delivery.send(event);
+            }
+            delivery.close();
+
+            // Then
+            assertThat(overlapping).hasValue(2);
+            assertThat(delivery.getPendingBudget().getPendingEvents()).isZero();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testCompressedBulk() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted();
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setCompression(Compression.GZIP);
+        configuration.setCompressionLevel(6);
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            LogEvent event = createEvent(INFO, "compressed");
+            delivery.accept(event);
+            delivery.send(event);
+            delivery.flush();
+
+            // Then
+            assertThat(server.getRequests()).singleElement().satisfies(request -> {
+                assertThat(request.encoding()).isEqualTo("gzip");
+                assertThat(request.body()).contains("compressed");
+            });
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    void testCompressedDataStreamBulk() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted();
+
+        OpensearchConfiguration configuration = createConfiguration(OverflowPolicy.BLOCK);
+        configuration.setUrl(server.getUrl());
+        configuration.setStreamingBulk(false);
+        configuration.setDataStream(true);
+        configuration.setCompression(Compression.GZIP);
+
+        try (OpensearchLogDelivery delivery = new OpensearchLogDelivery(configuration)) {
+            // When
+            LogEvent event = createEvent(INFO, "compressed");
+            delivery.accept(event);
+            delivery.send(event);
+            delivery.flush();
+
+            // Then
+            assertThat(configuration.isStreamingBulk()).isTrue();
+            assertThat(server.getRequests()).singleElement().satisfies(request -> {
+                assertThat(request.encoding()).isEqualTo("gzip");
+                assertThat(request.body()).startsWith("{\"create\":").contains("compressed");
+            });
+        } finally {
+            server.close();
+        }
+    }
+
+    public static class CollectingDeadLetterHandler implements DeadLetterHandler {
+
+        static final List<String> DOCUMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void handle(BulkResponseItem item, String document) {
+            DOCUMENTS.add(document);
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import com.chavaillaz.appender.log4j.opensearch.BulkStubServer.StubResponse;
+import org.junit.jupiter.api.Test;
+import org.opensearch.client.opensearch.OpenSearchClient;
+import org.opensearch.client.opensearch.generic.Requests;
+import org.opensearch.client.transport.OpenSearchTransport;
+
+class OpensearchUtilsTest {
+
+    @Test
+    void testCreateNodes() {
+        assertThat(OpensearchUtils.createNodes("http://node-1:9200, https://node-2:9201,"))
+                .extracting(node -> node.getHost().toURI())
+                .containsExactly("http://node-1:9200", "https://node-2:9201");
+    }
+
+    @Test
+    void testCreateThreadFactory() {
+        // Given
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        Runnable task = () -> {
+        };
+
+        // When
+        Thread platform = OpensearchUtils.createThreadFactory(configuration, "OpensearchTest").newThread(task);
+        configuration.setVirtualThreads(true);
+        Thread virtual = OpensearchUtils.createThreadFactory(configuration, "OpensearchTest").newThread(task);
+
+        // Then
+        assertThat(platform.isVirtual()).isFalse();
+        assertThat(platform.isDaemon()).isTrue();
+        assertThat(virtual.isVirtual()).isTrue();
+        assertThat(virtual.getName()).startsWith("OpensearchTest-");
+    }
+
+    @Test
+    void testResponseTimeout() throws Exception {
+        // Given
+        CountDownLatch released = new CountDownLatch(1);
+        BulkStubServer server = BulkStubServer.scripted();
+        server.setDefaultResponse(StubResponse.reset().beforeResponding(() -> OpensearchLogDeliveryTest.await(released)));
+
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setUrl(server.getUrl());
+        configuration.setUser("user");
+        configuration.setPassword("password");
+        configuration.setMaxConnections(4);
+        configuration.setMaxConnectionsPerRoute(2);
+        configuration.setIoThreads(1);
+        configuration.setResponseTimeout(Duration.ofMillis(200));
+
+        try (OpenSearchTransport transport = OpensearchUtils.createTransport(configuration, OpensearchUtils.createNodes(configuration.getUrl()))) {
+            // When / Then
+            OpenSearchClient client = new OpenSearchClient(transport);
+            assertThatThrownBy(() -> client.generic().execute(Requests.builder().method("GET").endpoint("/").build()))
+                    .isInstanceOf(IOException.class);
+        } finally {
+            released.countDown();
+            server.close();
+        }
+    }
+
+}
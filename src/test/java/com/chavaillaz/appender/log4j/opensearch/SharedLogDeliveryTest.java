@@ -0,0 +1,151 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+class SharedLogDeliveryTest {
+
+    protected static OpensearchConfiguration createConfiguration(String url, String index) {
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setConverter(DefaultStreamingLogConverter.class.getName());
+        configuration.setIndex(index);
+        configuration.setUrl(url);
+        configuration.setUser("user");
+        configuration.setPassword("password");
+        configuration.setFlushThreshold(2);
+        configuration.setFlushInterval(Duration.ofMinutes(1));
+        configuration.setOverflowPolicy(OverflowPolicy.BLOCK);
+        configuration.setOverflowTimeout(Duration.ofMillis(10));
+        return configuration;
+    }
+
+    @Test
+    void testSharedPipeline() throws Exception {
+        // Given
+        SharedLogDelivery first = new SharedLogDelivery(createConfiguration("http://localhost:1", "first"));
+        SharedLogDelivery second = new SharedLogDelivery(createConfiguration("http://localhost:1", "second"));
+        SharedLogDelivery other = new SharedLogDelivery(createConfiguration("http://localhost:2", "other"));
+
+        try {
+            // Then
+            assertThat(first.getDelivery()).isSameAs(second.getDelivery());
+            assertThat(other.getDelivery()).isNotSameAs(first.getDelivery());
+        } finally {
+            first.close();
+            second.close();
+            other.close();
+        }
+    }
+
+    protected static ObjectName getObjectName(String name) throws Exception {
+        return new ObjectName(DeliveryMetrics.JMX_DOMAIN + ":type=OpensearchAppender,name=" + ObjectName.quote(name));
+    }
+
+    @Test
+    void testSharedPipelineByCredentials() throws Exception {
+        // Given
+        OpensearchConfiguration otherPassword = createConfiguration("http://localhost:1", "other");
+        otherPassword.setPassword("other-password");
+        OpensearchConfiguration apiKey = createConfiguration("http://localhost:1", "other");
+        apiKey.setUser(null);
+        apiKey.setPassword(null);
+        apiKey.setApiKey("user");
+        SharedLogDelivery first = new SharedLogDelivery(createConfiguration("http://localhost:1", "first"));
+        SharedLogDelivery second = new SharedLogDelivery(otherPassword);
+        SharedLogDelivery third = new SharedLogDelivery(apiKey);
+
+        try {
+            // Then
+            assertThat(second.getDelivery()).isNotSameAs(first.getDelivery());
+            assertThat(third.getDelivery()).isNotSameAs(first.getDelivery());
+        } finally {
+            first.close();
+            second.close();
+            third.close();
+        }
+    }
+
+    @Test
+    void testSharedPipelineByOperation() throws Exception {
+        // Given
+        OpensearchConfiguration dataStream = createConfiguration("http://localhost:1", "logs");
+        dataStream.setDataStream(true);
+        OpensearchConfiguration ingestPipeline = createConfiguration("http://localhost:1", "other");
+        ingestPipeline.setPipeline("enrich");
+        SharedLogDelivery first = new SharedLogDelivery(createConfiguration("http://localhost:1", "first"));
+        SharedLogDelivery second = new SharedLogDelivery(dataStream);
+        SharedLogDelivery third = new SharedLogDelivery(ingestPipeline);
+
+        try {
+            // Then
+            assertThat(second.getDelivery()).isNotSameAs(first.getDelivery());
+            assertThat(third.getDelivery()).isNotSameAs(first.getDelivery());
+            assertThat(second.getDelivery().getConfiguration().isDataStream()).isTrue();
+            assertThat(third.getDelivery().getConfiguration().getPipeline()).isEqualTo("enrich");
+        } finally {
+            first.close();
+            second.close();
+            third.close();
+        }
+    }
+
+    @Test
+    void testMetricsTransferred() throws Exception {
+        // Given
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        SharedLogDelivery first = new SharedLogDelivery(createConfiguration("http://localhost:1", "first"));
+        SharedLogDelivery second = new SharedLogDelivery(createConfiguration("http://localhost:1", "second"));
+        first.registerMetrics("shared-first");
+        second.registerMetrics("shared-second");
+
+        try {
+            assertThat(server.isRegistered(getObjectName("shared-first"))).isTrue();
+            assertThat(server.isRegistered(getObjectName("shared-second"))).isFalse();
+
+            // When
+            first.close();
+
+            // Then
+            assertThat(server.isRegistered(getObjectName("shared-first"))).isFalse();
+            assertThat(server.isRegistered(getObjectName("shared-second"))).isTrue();
+        } finally {
+            first.close();
+            second.close();
+        }
+        assertThat(server.isRegistered(getObjectName("shared-second"))).isFalse();
+    }
+
+    @Test
+    void testCombinedBulk() throws Exception {
+        // Given
+        BulkStubServer server = BulkStubServer.scripted();
+        SharedLogDelivery first = new SharedLogDelivery(createConfiguration(server.getUrl(), "first"));
+        SharedLogDelivery second = new SharedLogDelivery(createConfiguration(server.getUrl(), "second"));
+
+        try {
+            // When
+            first.send(Map.of("message", "from first"));
+            second.send(Map.of("message", "from second"));
+            first.close();
+
+            // Then
+            assertThat(server.getBodies()).hasSize(1);
+            assertThat(server.getBodies().get(0))
+                    .contains("\"_index\":\"first\"", "from first")
+                    .contains("\"_index\":\"second\"", "from second");
+            assertThat(second.getDelivery().getMetrics().getSentDocuments()).isEqualTo(2);
+        } finally {
+            second.close();
+            server.close();
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.http.HttpHost;
+import org.junit.jupiter.api.Test;
+import org.opensearch.client.opensearch.generic.OpenSearchGenericClient;
+import org.opensearch.client.opensearch.generic.Requests;
+import org.opensearch.client.opensearch.generic.Response;
+import org.opensearch.client.transport.OpenSearchTransport;
+import org.opensearch.client.transport.httpclient5.internal.Node;
+
+class SniffingTransportTest {
+
+    @Test
+    void testPublishAddress() {
+        assertThat(SniffingTransport.toHost("https", "10.0.0.1:9200"))
+                .isEqualTo(new HttpHost("https", "10.0.0.1", 9200));
+        assertThat(SniffingTransport.toHost("http", "node-1.local/10.0.0.1:9201"))
+                .isEqualTo(new HttpHost("http", "node-1.local", 9201));
+        assertThat(SniffingTransport.toHost("http", "[::1]:9200"))
+                .isEqualTo(new HttpHost("http", "::1", 9200));
+    }
+
+    @Test
+    void testSniffNodes() throws Exception {
+        // Given
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        int port = server.getAddress().getPort();
+        server.createContext("/_nodes/http", exchange -> {
+            byte[] response = ("""
+                    {"nodes":{
+                    "a":{"name":"manager","roles":["cluster_manager"],"http":{"publish_address":"127.0.0.1:%d"}},
+                    "b":{"name":"data","roles":["data","ingest"],"http":{"publish_address":"localhost/127.0.0.1:%d"}},
+                    "c":{"name":"no-http","roles":["data"]}}}""").formatted(port, port).getBytes(UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setUser("user");
+        configuration.setPassword("password");
+        configuration.setNodeSelection(NodeSelection.INGEST);
+        AtomicInteger transports = new AtomicInteger();
+        CloseableHttpAsyncClient httpClient = OpensearchUtils.createHttpClient(configuration);
+
+        // When
+        try (SniffingTransport transport = new SniffingTransport(
+                OpensearchUtils.createNodes("http://localhost:" + port),
+                nodes -> {
+                    transports.incrementAndGet();
+                    return OpensearchUtils.createTransport(configuration, httpClient, nodes);
+                },
+                Duration.ofHours(1),
+                Thread.ofVirtual().factory())) {
+            transport.sniff();
+
+            // Then
+            assertThat(transport.getNodes())
+                    .extracting(Node::getName)
+                    .containsExactlyInAnyOrder("manager", "data");
+            assertThat(transports).hasValue(2);
+            try (Response response = new OpenSearchGenericClient(transport).execute(Requests.builder()
+                    .method("GET")
+                    .endpoint("/_nodes/http")
+                    .build())) {
+                assertThat(response.getStatus()).isEqualTo(200);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testKeepConfiguredNodesWhenUnreachable() throws Exception {
+        // Given
+        OpensearchConfiguration configuration = new OpensearchConfiguration();
+        configuration.setUser("user");
+        configuration.setPassword("password");
+        List<Node> configured = OpensearchUtils.createNodes("http://localhost:1, http://localhost:2");
+        CloseableHttpAsyncClient httpClient = OpensearchUtils.createHttpClient(configuration);
+
+        // When
+        try (OpenSearchTransport transport = new SniffingTransport(configured,
+                nodes -> OpensearchUtils.createTransport(configuration, httpClient, nodes),
+                Duration.ofHours(1),
+                Thread.ofVirtual().factory())) {
+            ((SniffingTransport) transport).sniff();
+
+            // Then
+            assertThat(((SniffingTransport) transport).getNodes())
+                    .extracting(Node::getHost)
+                    .containsExactly(new HttpHost("http", "localhost", 1), new HttpHost("http", "localhost", 2));
+        }
+    }
+
+}
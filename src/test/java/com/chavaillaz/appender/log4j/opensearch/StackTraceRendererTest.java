@@ -0,0 +1,69 @@
+package com.chavaillaz.appender.log4j.opensearch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import com.chavaillaz.appender.log4j.opensearch.StackTraceRenderer.RenderedStackTrace;
+import org.junit.jupiter.api.Test;
+
+class StackTraceRendererTest {
+
+    protected static Exception createException(String message) {
+        Exception exception = new IllegalStateException(message, new IllegalArgumentException("cause"));
+        exception.addSuppressed(new UnsupportedOperationException("suppressed"));
+        return exception;
+    }
+
+    @Test
+    void testSameFormatAsPrintStackTrace() {
+        // Given
+        Exception exception = createException("failure");
+        StringWriter writer = new StringWriter();
+        exception.printStackTrace(new PrintWriter(writer));
+
+        // When
+        RenderedStackTrace rendered = new StackTraceRenderer(0, 0, false).render(exception);
+
+        // Then
+        assertThat(rendered.text()).isEqualTo(writer.toString());
+        assertThat(rendered.hash()).isNull();
+    }
+
+    @Test
+    void testCachedByStructure() {
+        // Given
+        StackTraceRenderer renderer = new StackTraceRenderer(16, 0, true);
+        Exception[] exceptions = new Exception[3];
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptions[i] = createException(i < 2 ? "failure" : "other failure");
+        }
+
+        // When
+        RenderedStackTrace first = renderer.render(exceptions[0]);
+        RenderedStackTrace second = renderer.render(exceptions[1]);
+        RenderedStackTrace other = renderer.render(exceptions[2]);
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(other).isNotSameAs(first);
+        assertThat(other.text()).contains("other failure");
+        assertThat(other.hash()).isEqualTo(first.hash());
+    }
+
+    @Test
+    void testMaxDepth() {
+        // Given
+        Exception exception = new IllegalStateException("failure");
+
+        // When
+        RenderedStackTrace rendered = new StackTraceRenderer(0, 2, false).render(exception);
+
+        // Then
+        assertThat(rendered.text().lines())
+                .hasSize(4)
+                .last().asString().matches("\t\\.\\.\\. \\d+ frames truncated");
+    }
+
+}